@@ -1,17 +1,22 @@
 package com.smartgwt.extensions.utility.requestrouter;
 
+import java.util.Vector;
+
 import com.google.gwt.core.client.JavaScriptException;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 import com.google.gwt.json.client.JSONArray;
 import com.google.gwt.json.client.JSONObject;
-import com.google.gwt.json.client.JSONParser;
-import com.google.gwt.json.client.JSONValue;
 import com.smartgwt.extensions.utility.requestrouter.javascriptobject.JsObjectResponseHandler;
 import com.smartgwt.extensions.utility.requestrouter.jsarray.JsArrayResponseHandler;
 import com.smartgwt.extensions.utility.requestrouter.json.JSONArrayResponseHandler;
 import com.smartgwt.extensions.utility.requestrouter.json.JSONObjectResponseHandler;
 import com.smartgwt.extensions.utility.requestrouter.json.StringJSONResponseHandler;
+import com.smartgwt.extensions.utility.requestrouter.overlay.ShapeDecoder;
+import com.smartgwt.extensions.utility.requestrouter.overlay.TypedArrayResponseHandler;
+import com.smartgwt.extensions.utility.requestrouter.stream.StreamResponseHandler;
 
 /**
  * This class is the representation of an AJAX request which can retrieve data in different formats:
@@ -20,6 +25,8 @@ import com.smartgwt.extensions.utility.requestrouter.json.StringJSONResponseHand
  * 3) JSON-Formatted String
  * 4) JSONObject
  * 5) JSONArray
+ * 6) Streams of records, delivered a chunk at a time (NDJSON)
+ * 7) TypedArray of a declared shape, validated by a generated ShapeDecoder
  * 
  * 
  * The decision among data format is made automatically thanks to polymorphism and overloading
@@ -27,7 +34,7 @@ import com.smartgwt.extensions.utility.requestrouter.json.StringJSONResponseHand
  * @author marcellolarocca@gmail.com
  *
  */
-public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXRequest<T>> {
+public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXRequest<T>>, Schedulable {
 	/*
 	 *  NOTE: When a new response type is introduced, please follow these steps:
 	 *  1) Add a new value to the enum ResponseType;
@@ -41,8 +48,11 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 		private int requestID;
 		
 		private String url;
+		private String host;	//The origin of url, identifying the router's HostPool
 		protected AJAXRequestRouter router;
 		protected AJAXResponseHandler handler = null;
+		private Vector<AJAXResponseHandler> coalescedHandlers = null;	//Handlers of identical requests sharing this one's response
+		private Vector<ResponseDigest> coalescedStaleDigests = null;	//Digests of the stale responses they've been served (null if none)
 		
 		private static final byte DEFAULT_TIMEOUT = 10;
 		
@@ -53,6 +63,38 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 		private ResponseType responseType;
 
 		private boolean completed;
+		
+		private double submittedAt = 0;	//When (in milliseconds) the request was handed to the router, before any idle lane, batch or retry delay
+		private double enqueuedAt = 0;	//When (in milliseconds) the request was submitted to the scheduler
+		
+		private double startedAt = 0;	//When (in milliseconds) the request was sent over the network
+		
+		private RequestOutcome outcome = null;	//How the request ended, once completed
+		
+		private double deadline = Double.MAX_VALUE;	//Absolute time (in milliseconds) when the request expires, set by the router once started
+		
+		private RequestTransport transport = null;	//How the request is sent: if not set, the router chooses it
+		private JavaScriptObject transportHandle = null;	//The transport's state for this request (f.i. its script element), while it is pending
+		private int httpStatus = 0;		//The HTTP status of the response, when the transport can tell it
+		private int responseLength = -1;	//The length of the response's body, when the transport can tell it
+		private String responseText = null;	//The response's body, kept until it's stored by the persistent cache
+		
+		private int cacheTTL = 0;	//How long (in seconds) the response may be served from the router's cache: 0 <=> not cached
+		private int persistentTTL = 0;	//How long (in seconds) the response is kept in the router's persistent cache: 0 <=> not persisted
+		
+		private AJAXRequest<JavaScriptObject> batch = null;	//The batch this request has been merged into, if any
+		
+		private boolean staleWhileRevalidate = false;
+		private boolean revalidating = false;	//True <=> the handler has already been served a stale response
+		private ResponseDigest staleDigest = null;	//Digest of the stale response served
+		
+		private RetryPolicy retryPolicy = null;	//How the request is sent again if it fails: if not set, the router's default one is used
+		private int attempts = 0;				//How many times the request has been sent
+		private int chunks = 0;					//How many chunks of a streamed response have been delivered
+		private int chunkSize = StreamTransport.DEFAULT_CHUNK_SIZE;	//The maximum number of records in each chunk of a streamed response
+		
+		@SuppressWarnings("rawtypes")
+		private ShapeDecoder decoder = null;	//Validates and types TYPED_ARRAY responses
 
 
 		/**
@@ -116,6 +158,35 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 			init(_url,_router,_handler, ResponseType.JSON_ARRAY);
 		}
 		
+		/**
+		 * Constructor for an AJAXRequest which manages an array of records with a declared shape
+		 * 
+		 * @param _url The remote address where the call has to be made
+		 * @param _router The AJAXRequestRouter which handles the request; MUST be notified when the request is completed
+		 * @param _decoder The ShapeDecoder<S> (created through GWT.create) which validates the response
+		 * @param _handler The TypedArrayResponseHandler<S> which is going to handle the response (or the failure of the request,
+		 * 					including a response that doesn't match the shape)
+		 * 
+		 */
+		public <S> AJAXRequest(String _url, AJAXRequestRouter _router, ShapeDecoder<S> _decoder, TypedArrayResponseHandler<S> _handler ) {
+			init(_url,_router,_handler, ResponseType.TYPED_ARRAY);
+			decoder = _decoder;
+		}
+		
+		/**
+		 * Constructor for an AJAXRequest whose response is streamed (as NDJSON) and delivered a chunk of records at a time:
+		 * it is sent through StreamTransport, unless another transport able to stream is set
+		 * 
+		 * @param _url The remote address where the call has to be made
+		 * @param _router The AJAXRequestRouter which handles the request; MUST be notified when the request is completed
+		 * @param _handler The StreamResponseHandler<T> which is going to handle the chunks (or the failure of the request)
+		 * 
+		 */
+		public AJAXRequest(String _url, AJAXRequestRouter _router, StreamResponseHandler<T> _handler ) {
+			init(_url,_router,_handler, ResponseType.STREAM);
+			transport = StreamTransport.get();
+		}
+		
 		/**
 		 * 
 		 * @param _url The remote address where the call has to be made
@@ -129,6 +200,7 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 		private void init(String _url, AJAXRequestRouter _router, AJAXResponseHandler _handler, ResponseType _responseType){
 			requestID = ++counter;
 			url = _url;
+			host = HostPool.getOrigin(_url);
 			router = _router;
 			responseType = _responseType;
 			handler = _handler;
@@ -139,143 +211,353 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 	
 		
 		/**
-		 * Starts the AJAX request
+		 * Starts the AJAX request, through its transport (JSONP if none has been set)
+		 * The request's deadline is not handled here: it is tracked by the router, which calls expire()
+		 * once the timeout elapses.
 		 */
 		public void getResponse(){
-			getResponse(requestID, url, this, responseType);
+			if ( transport == null ){
+				transport = JsonpTransport.get();
+			}
+			transport.send(this);
 		}
 		
 		/**
-		 * Make call to remote server.
-		 *
-		 * @param requestID
-		 * @param url
-		 * @param request
-		 * @param responseType
-		 */
-		private native void getResponse(int requestID, String url, AJAXRequest<T> request, ResponseType responseType ) /*-{
-		 var callback = "callback" + requestID;
-		
-		 // [1] Create a script element.
-		 var script = document.createElement("script");
-		 script.setAttribute("src", url + callback);
-		 script.setAttribute("type", "text/javascript");
-		
-		 // [2] Define the callback function on the window object.
-		 window[callback] = function(jsonObj) {
-		 // [3]
-   			request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::handleAJAXResponse(Lcom/google/gwt/core/client/JavaScriptObject;)(jsonObj);
-		   	window[callback + "done"] = true;
-		 }
-		
-		 // [4] JSON download has 10-second timeout.
-		 setTimeout(
-			 function() {
-			   if (!window[callback + "done"]) {
-			     request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::handleAJAXResponse(Lcom/google/gwt/core/client/JavaScriptObject;)(null);
-			   }
-			
-			   // [5] Cleanup. Remove script and callback elements.
-			   document.body.removeChild(script);
-			   delete window[callback];
-			   delete window[callback + "done"];
-			 }, 
-			 10000
-		 );
-		
-		 // [6] Attach the script element to the document body.
-		 document.body.appendChild(script);
-		}-*/;
+		 * Called by the router when the request's deadline has passed: the request is aborted and handled as failed
+		 */
+		protected void expire(){
+			if ( completed ){
+				return ;
+			}//else
+			transport.abort(this);
+			outcome = RequestOutcome.TIMEOUT;
+			handleAJAXResponse(null);
+		}
 		
 	  
 		/**
 		 * Handle the response to the request for JavaScriptObject data from a remote server.
 		 *
+		 * The response is delivered to the request's handler first, and then to the handlers of any identical
+		 * request coalesced into this one.
+		 *
 		 * @param jso The date retrieved from the remote application
 		 */
-		@SuppressWarnings("unchecked")//No need to check: _handler's type and responseType's value are correlated
 		protected void handleAJAXResponse(JavaScriptObject jso) {
+			if ( completed ){
+				return ;	//Already expired: late responses must be ignored
+			}//else
 			markAsCompleted();					//Must keep track of the request status
+			if ( outcome == null ){
+				outcome = jso == null ? RequestOutcome.FAILURE : RequestOutcome.SUCCESS;
+			}
 			router.notifyCompletion(this);	//GOT to do it anyway
+			if ( jso == null && router.retryRequest(this) ){
+				return ;	//It will be sent again after a backoff: handlers are only notified once retries are over
+			}//else
+			ResponseDigest digest = null;
+			if ( jso != null ){
+				digest = router.cacheResponse(this, jso);
+			}
 			
-		    //else
-		    //alert(jso.toString());
+			if ( revalidating ){
+				//The handler has already been served a stale response: it only needs the new one if it has changed.
+				//Failures of the background refresh are not reported to it, since it has got data anyway
+				if ( jso != null ){
+					if ( digest == null ){
+						digest = ResponseDigest.of(jso);
+					}
+					deliverRevalidation(handler, jso, digest, staleDigest);
+				}
+				deliverToCoalescedHandlers(jso, digest);
+			}else{
+				deliverResponse(handler, jso);
+				deliverToCoalescedHandlers(jso, digest);
+			}
+		}
+		
+		/**
+		 * Delivers a fresh response to a handler which has already been served a stale one, only if it has changed
+		 * (comparing the fingerprints of the whole responses): handlers implementing RevalidationHandler are then
+		 * notified through onRevalidated
+		 * @param _handler The handler
+		 * @param jso The fresh response
+		 * @param digest The fresh response's digest
+		 * @param stale The digest of the stale response served to the handler (null if unknown)
+		 */
+		private void deliverRevalidation(AJAXResponseHandler _handler, JavaScriptObject jso, ResponseDigest digest, ResponseDigest stale){
+			if ( stale != null && digest.getHash() == stale.getHash() ){
+				return ;
+			}//else
+			deliverResponse(_handler, jso);
+			if ( _handler instanceof RevalidationHandler ){
+				((RevalidationHandler)_handler).onRevalidated(this);
+			}
+		}
+		
+		/**
+		 * Handle a chunk of a streamed response: the records are delivered to the handler straight away, and the
+		 * router is notified, so that the request doesn't expire as long as data keeps coming.
+		 * If the handler fails on a chunk, the download is stopped and the request fails.
+		 *
+		 * @param records The records parsed since the previous chunk
+		 */
+		@SuppressWarnings("unchecked")//handler is a StreamResponseHandler<T> for streamed requests
+		protected void handleChunk(JsArray<T> records) {
+			if ( completed ){
+				return ;	//Already expired or cancelled: late chunks must be ignored
+			}//else
+			chunks++;
+			router.notifyProgress(this);
+			try{
+				((StreamResponseHandler<T>)handler).onChunk(records);
+			}catch(JavaScriptException | ClassCastException e){
+				transport.abort(this);
+				handleAJAXResponse(null);
+			}
+		}
+		
+		/**
+		 * Serves the handler a stale response (asynchronously, as if it came from the network), and turns this
+		 * request into a background revalidation of it
+		 * 
+		 * @param jso The stale response
+		 * @param digest The stale response's digest, to tell whether the fresh one has changed
+		 */
+		protected void handleStaleResponse(final JavaScriptObject jso, ResponseDigest digest) {
+			revalidating = true;
+			staleDigest = digest;
+			Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+				@Override
+				public void execute() {
+					deliverResponse(handler, jso);
+				}
+			});
+		}
+		
+		/**
+		 * Completes the request with a response which has not been retrieved from the network (f.i. a cached one):
+		 * the router is not notified, since the request never took a slot
+		 * 
+		 * @param jso The response to be delivered
+		 */
+		protected void handleCachedResponse(JavaScriptObject jso) {
+			if ( completed ){
+				return ;
+			}//else
+			markAsCompleted();
+			deliverToHandlers(jso);
+		}
+		
+		/**
+		 * Marks the request as cancelled by the caller: its handlers won't be notified, and any late response
+		 * will be ignored. It's up to the router to call it, and to stop the transport
+		 */
+		protected void markAsCancelled() {
+			if ( completed ){
+				return ;
+			}//else
+			markAsCompleted();
+			outcome = RequestOutcome.CANCELLED;
+		}
+		
+		/**
+		 * Completes the request as failed without sending it (f.i. because its host's circuit breaker is open):
+		 * the failure is delivered asynchronously, and the router is not notified, since the request never took a slot
+		 */
+		protected void reject() {
+			if ( completed ){
+				return ;
+			}//else
+			markAsCompleted();
+			outcome = RequestOutcome.REJECTED;
+			Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+				@Override
+				public void execute() {
+					if ( !revalidating ){
+						deliverResponse(handler, null);	//Otherwise the handler has got stale data anyway
+					}
+					deliverToCoalescedHandlers(null, null);
+				}
+			});
+		}
+		
+		/**
+		 * Completes the request without sending it, because the router's waiting queue is full: handlers
+		 * implementing LoadSheddingHandler are notified through onShed, the others through onFailure.
+		 * Like for reject(), notifications are asynchronous and the router is not notified.
+		 */
+		protected void shed() {
+			if ( completed ){
+				return ;
+			}//else
+			markAsCompleted();
+			outcome = RequestOutcome.SHED;
+			Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+				@Override
+				public void execute() {
+					if ( !revalidating ){
+						deliverShed(handler);	//Otherwise the handler has got stale data anyway
+					}
+					if ( coalescedHandlers != null ){
+						for ( int i = 0; i < coalescedHandlers.size(); i++ ){
+							if ( coalescedStaleDigests.get(i) == null ){
+								deliverShed(coalescedHandlers.get(i));
+							}
+						}
+					}
+				}
+			});
+		}
+		
+		/**
+		 * Tells one of the handlers of this request that it has been shed
+		 * @param _handler
+		 */
+		private void deliverShed(AJAXResponseHandler _handler) {
+			if ( _handler instanceof LoadSheddingHandler ){
+				((LoadSheddingHandler)_handler).onShed(this);
+			}else{
+				deliverResponse(_handler, null);
+			}
+		}
+		
+		/**
+		 * Delivers the response to the request's handler and to the handlers coalesced into this request
+		 * 
+		 * @param jso The date retrieved from the remote application
+		 */
+		private void deliverToHandlers(JavaScriptObject jso) {
+			deliverResponse(handler, jso);
+			deliverToCoalescedHandlers(jso, null);
+		}
+		
+		/**
+		 * Delivers the response to the handlers coalesced into this request: those which have already been served
+		 * a stale response get the fresh one only if it has changed, and are not told of failures
+		 * 
+		 * @param jso The date retrieved from the remote application
+		 * @param digest The response's digest, if it has already been computed (null otherwise)
+		 */
+		private void deliverToCoalescedHandlers(JavaScriptObject jso, ResponseDigest digest) {
+			if ( coalescedHandlers == null ){
+				return ;
+			}//else
+			for ( int i = 0; i < coalescedHandlers.size(); i++ ){
+				ResponseDigest stale = coalescedStaleDigests.get(i);
+				if ( stale == null ){
+					deliverResponse(coalescedHandlers.get(i), jso);
+				}else if ( jso != null ){
+					if ( digest == null ){
+						digest = ResponseDigest.of(jso);
+					}
+					deliverRevalidation(coalescedHandlers.get(i), jso, digest, stale);
+				}
+			}
+		}
+		
+		/**
+		 * Passes the response (or the failure of the request, if jso is null) to one of the handlers of this request
+		 * 
+		 * @param _handler The handler to be notified: its type is correlated with responseType
+		 * @param jso The date retrieved from the remote application
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})//No need to check: _handler's type and responseType's value are correlated
+		private void deliverResponse(AJAXResponseHandler _handler, JavaScriptObject jso) {
 			switch(responseType){
  			case JAVASCRIPT_OBJECT :
  				if (jso == null) {
- 					((JsObjectResponseHandler)handler).onFailure(this);
+ 					((JsObjectResponseHandler)_handler).onFailure(this);
  				}else{
  					try{
- 						((JsObjectResponseHandler)handler).onSuccess(jso);					
+ 						((JsObjectResponseHandler)_handler).onSuccess(jso);					
  					}catch(JavaScriptException | ClassCastException e){
- 						((JsObjectResponseHandler)handler).onFailure(this);
+ 						((JsObjectResponseHandler)_handler).onFailure(this);
  					}
  					
 /* 					
  					catch(JavaScriptException e_j){
- 						((JsObjectResponseHandler)handler).onFailure(this);
+ 						((JsObjectResponseHandler)_handler).onFailure(this);
  					}catch(ClassCastException e_c){
- 						((JsObjectResponseHandler)handler).onFailure(this);
+ 						((JsObjectResponseHandler)_handler).onFailure(this);
  					}
 */
  				}
 	 			break;
 	 		case JSARRAY:
  				if (jso == null) {
-		 			((JsArrayResponseHandler<T>)handler).onFailure(this); 					
+		 			((JsArrayResponseHandler<T>)_handler).onFailure(this); 					
  				}else{
  					try{
- 	 		 			((JsArrayResponseHandler<T>)handler).onSuccess(asArray(jso));
+ 						if ( !isArray(jso) ){
+ 							throw new ClassCastException();	//The elements' type can't be checked: use a ShapeDecoder for that
+ 						}
+ 	 		 			((JsArrayResponseHandler<T>)_handler).onSuccess(asArray(jso));
  					}catch(JavaScriptException | ClassCastException e){
- 						((JsArrayResponseHandler<T>)handler).onFailure(this);
+ 						((JsArrayResponseHandler<T>)_handler).onFailure(this);
  					}				
  				}	 			
 	 			break;
 	 		case STRING_JSON:
  				if (jso == null) {
-		 			((StringJSONResponseHandler)handler).onFailure(this);
+		 			((StringJSONResponseHandler)_handler).onFailure(this);
  				}else{
  					try{
- 						((StringJSONResponseHandler)handler).onSuccess(asString(jso));
+ 						((StringJSONResponseHandler)_handler).onResponse(jso);	//Serialized only if the handler needs the text
  					}catch(JavaScriptException | ClassCastException e){
- 						((StringJSONResponseHandler)handler).onFailure(this);
+ 						((StringJSONResponseHandler)_handler).onFailure(this);
  					} 							 			
  				}	 			
 	 			break;			
 	 		case JSON_OBJECT:
  				if (jso == null) {
-		 			((JSONObjectResponseHandler)handler).onFailure(this);
+		 			((JSONObjectResponseHandler)_handler).onFailure(this);
  				}else{
  					try{
- 						String jsonString = asString(jso);
- 						JSONValue jsonValue = JSONParser.parseStrict(jsonString);
- 						JSONObject jsonOBJ = jsonValue.isObject();
- 						if ( jsonOBJ==null){
+ 						//The response has already been parsed: it's just wrapped, without serializing and parsing it again
+ 						if ( !isObject(jso) ){
  							throw new ClassCastException();
  						}
- 						((JSONObjectResponseHandler)handler).onSuccess(jsonOBJ);
+ 						((JSONObjectResponseHandler)_handler).onSuccess(new JSONObject(jso));
  					}catch(JavaScriptException | ClassCastException | NullPointerException e){
- 						((JSONObjectResponseHandler)handler).onFailure(this);
+ 						((JSONObjectResponseHandler)_handler).onFailure(this);
  					}			
  				}	 			
 	 			break;		
 	 		case JSON_ARRAY:
  				if (jso == null) {
-		 			((JSONArrayResponseHandler)handler).onFailure(this);
+		 			((JSONArrayResponseHandler)_handler).onFailure(this);
  				}else{
  					try{
- 						String jsonString = asString(jso);
- 						JSONValue jsonValue = JSONParser.parseStrict(jsonString);
- 						JSONArray jsonArray = jsonValue.isArray();
- 						if ( jsonArray==null){
+ 						if ( !isArray(jso) ){
  							throw new ClassCastException();
- 						} 						
- 						((JSONArrayResponseHandler)handler).onSuccess(jsonArray);
+ 						}
+ 						((JSONArrayResponseHandler)_handler).onSuccess(new JSONArray(jso));
  					}catch(JavaScriptException | ClassCastException | NullPointerException e){
- 						((JSONArrayResponseHandler)handler).onFailure(this);
+ 						((JSONArrayResponseHandler)_handler).onFailure(this);
  					}
  				}	 			
-	 			break;		 			
+	 			break;
+	 		case TYPED_ARRAY:
+ 				if (jso == null) {
+		 			((TypedArrayResponseHandler)_handler).onFailure(this);
+ 				}else{
+ 					try{
+ 						//Validated, but neither copied nor converted: the handler reads the response itself
+ 						((TypedArrayResponseHandler)_handler).onSuccess(decoder.decodeArray(jso));
+ 					}catch(JavaScriptException | ClassCastException e){
+ 						((TypedArrayResponseHandler)_handler).onFailure(this);
+ 					}
+ 				}
+	 			break;
+	 		case STREAM:
+	 			//The records have already been delivered through onChunk
+ 				if (jso == null) {
+		 			((StreamResponseHandler<T>)_handler).onFailure(this);
+ 				}else{
+ 					((StreamResponseHandler<T>)_handler).onComplete();
+ 				}
+	 			break;
 			}		  		    
 	  }
 		  
@@ -288,10 +570,19 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 	  }-*/;
 
 	  /**
-	   * Cast JavaScriptObject as a String
+	   * Structural check for JSON_OBJECT responses
+	   * @return true <=> jso is a non-array object
 	   */
-	  private final native String asString(JavaScriptObject jso) /*-{
-	    return JSON.stringify(jso);
+	  private static native boolean isObject(JavaScriptObject jso) /*-{
+	    return jso !== null && typeof jso === "object" && !Array.isArray(jso);
+	  }-*/;
+
+	  /**
+	   * Structural check for JSON_ARRAY responses
+	   * @return true <=> jso is an array
+	   */
+	  private static native boolean isArray(JavaScriptObject jso) /*-{
+	    return Array.isArray(jso);
 	  }-*/;
 	  
 	  
@@ -317,6 +608,286 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 			handler.onQueueFull( this );
 		}
 		
+		/**
+		 * Attaches the handler of an identical request (same url and response type) to this one, so that
+		 * both will be served by a single network call. If that request has already served its handler a stale
+		 * response, the handler will only get the fresh one if it has changed
+		 * @param _request The identical request: its handler MUST be of the same type as this request's handler
+		 */
+		protected void addCoalescedHandler(@SuppressWarnings("rawtypes") AJAXRequest _request){
+			if ( coalescedHandlers == null ){
+				coalescedHandlers = new Vector<AJAXResponseHandler>();
+				coalescedStaleDigests = new Vector<ResponseDigest>();
+			}
+			coalescedHandlers.add(_request.handler);
+			coalescedStaleDigests.add(_request.revalidating ? _request.staleDigest : null);
+		}
+		
+		/**
+		 * 
+		 * @return The key identifying requests which can share the same response: same response type (and shape) and same url
+		 */
+		public String getCoalescingKey(){
+			//Requests decoding the same url with different shapes can't share their response
+			return responseType.name() + (decoder != null ? "<" + decoder.getClass().getName() + ">" : "") + " " + url;
+		}
+		
+		/**
+		 * 
+		 * @return The key identifying the request's response in the router's cache: normalized url + response type
+		 */
+		public String getCacheKey(){
+			return responseType.name() + " " + ResponseCache.normalizeUrl(url);
+		}
+		
+		/**
+		 * 
+		 * @return How long (in seconds) the response may be served from the router's cache
+		 */
+		public int getCacheTTL() {
+			return cacheTTL;
+		}
+		
+		/**
+		 * Sets how long the response may be served from the router's cache: while the cached response is valid,
+		 * identical requests are served without any network call.
+		 * @param _cacheTTL The time-to-live (in seconds) of the response: 0 (the default) means the response is never cached
+		 */
+		public void setCacheTTL(int _cacheTTL) {
+			cacheTTL = _cacheTTL;
+		}
+		
+		/**
+		 * 
+		 * @return How long (in seconds) the response is kept in the router's persistent cache
+		 */
+		public int getPersistentTTL() {
+			return persistentTTL;
+		}
+		
+		/**
+		 * Sets how long the response is kept in the router's persistent cache (see AJAXRequestRouter.setPersistentCache),
+		 * which survives page reloads: the first time an identical request is made by a later page, the stored
+		 * response is delivered to the handler's onSuccess right away, and the request is sent in background with
+		 * LOW priority, just like in stale-while-revalidate mode.
+		 * @param _persistentTTL The time-to-live (in seconds) of the stored response: 0 (the default) means the response is never stored
+		 */
+		public void setPersistentTTL(int _persistentTTL) {
+			persistentTTL = _persistentTTL;
+		}
+		
+		/**
+		 * 
+		 * @return true <=> the request is in stale-while-revalidate mode
+		 */
+		public boolean isStaleWhileRevalidate() {
+			return staleWhileRevalidate;
+		}
+		
+		/**
+		 * Sets the stale-while-revalidate mode: when enabled, if the router has stored a response for the same url
+		 * (even an expired one), the handler's onSuccess is immediately called with it, and the request is sent
+		 * in background with LOW priority. The fresh response is delivered only if it differs from the stale one,
+		 * in which case handlers implementing RevalidationHandler are notified through onRevalidated.
+		 * Responses of requests in this mode are always stored by the router, even without a cache TTL.
+		 * @param _staleWhileRevalidate
+		 */
+		public void setStaleWhileRevalidate(boolean _staleWhileRevalidate) {
+			staleWhileRevalidate = _staleWhileRevalidate;
+		}
+		
+		/**
+		 * 
+		 * @return true <=> the handler has been served a stale response and the request is refreshing it
+		 */
+		public boolean isRevalidating() {
+			return revalidating;
+		}
+		
+		/**
+		 * 
+		 * @return The transport the request is sent through (null if it hasn't been chosen yet)
+		 */
+		public RequestTransport getTransport() {
+			return transport;
+		}
+		
+		/**
+		 * Sets the transport the request is sent through: if it is not set, the router chooses its host's one,
+		 * or its default one
+		 * @param _transport
+		 */
+		public void setTransport(RequestTransport _transport) {
+			transport = _transport;
+		}
+		
+		/**
+		 * 
+		 * @return The state kept by the transport for this request, while it is pending
+		 */
+		public JavaScriptObject getTransportHandle() {
+			return transportHandle;
+		}
+		
+		/**
+		 * Lets the transport store its state for this request
+		 * @param _transportHandle
+		 */
+		public void setTransportHandle(JavaScriptObject _transportHandle) {
+			transportHandle = _transportHandle;
+		}
+		
+		/**
+		 * 
+		 * @return The HTTP status of the response, or 0 if it is not known (f.i. for JSONP requests)
+		 */
+		public int getHttpStatus() {
+			return httpStatus;
+		}
+		
+		/**
+		 * Lets the transport store the HTTP status of the response
+		 * @param _httpStatus
+		 */
+		public void setHttpStatus(int _httpStatus) {
+			httpStatus = _httpStatus;
+		}
+		
+		/**
+		 * 
+		 * @return The number of characters of the response's body, or -1 if it is not known (f.i. for JSONP requests)
+		 */
+		public int getResponseLength() {
+			return responseLength;
+		}
+		
+		/**
+		 * Lets the transport store the length of the response's body, so that the response's size doesn't have to be estimated
+		 * @param _responseLength
+		 */
+		public void setResponseLength(int _responseLength) {
+			responseLength = _responseLength;
+		}
+		
+		/**
+		 * 
+		 * @return The response's body, if the transport has handed it and the response is still to be stored
+		 * by the router's persistent cache (null otherwise)
+		 */
+		public String getResponseText() {
+			return responseText;
+		}
+		
+		/**
+		 * Lets the transport hand the response's body to the router's persistent cache, which then doesn't have to
+		 * serialize the response again: it's only kept by requests with a positive persistent TTL
+		 * @param _responseText
+		 */
+		public void setResponseText(String _responseText) {
+			responseText = persistentTTL > 0 ? _responseText : null;
+		}
+		
+		/**
+		 * 
+		 * @return The BatchRequest this request has been merged into, or null if it's sent on its own
+		 */
+		public AJAXRequest<JavaScriptObject> getBatch() {
+			return batch;
+		}
+		
+		protected void setBatch(AJAXRequest<JavaScriptObject> _batch) {
+			batch = _batch;
+		}
+		
+		/**
+		 * 
+		 * @return The policy by which the request is sent again if it fails (null <=> the router's default one)
+		 */
+		public RetryPolicy getRetryPolicy() {
+			return retryPolicy;
+		}
+		
+		/**
+		 * Sets the policy by which the request is sent again if it fails: the handler's onFailure is only called
+		 * once the policy (or the router's retry budget) doesn't allow any more retries
+		 * @param _retryPolicy The policy to be used (null <=> the router's default one)
+		 */
+		public void setRetryPolicy(RetryPolicy _retryPolicy) {
+			retryPolicy = _retryPolicy;
+		}
+		
+		/**
+		 * 
+		 * @return How many times the request has been sent over the network (alone or in a batch)
+		 */
+		public int getAttempts() {
+			return attempts;
+		}
+		
+		/**
+		 * 
+		 * @return How many chunks of a streamed response have been delivered to the handler so far
+		 */
+		public int getChunks() {
+			return chunks;
+		}
+		
+		/**
+		 * 
+		 * @return The maximum number of records delivered in a single chunk of a streamed response
+		 */
+		public int getChunkSize() {
+			return chunkSize;
+		}
+		
+		/**
+		 * Sets the maximum number of records delivered in a single chunk of a streamed response
+		 * @param _chunkSize The value to be set (must be >= 1)
+		 */
+		public void setChunkSize(int _chunkSize) throws IllegalArgumentException{
+			if ( _chunkSize < 1 ){
+				throw new IllegalArgumentException();
+			}
+			chunkSize = _chunkSize;
+		}
+		
+		/**
+		 * Records that the request is being sent: it's up to the router to call it
+		 */
+		protected void countAttempt() {
+			attempts++;
+		}
+		
+		/**
+		 * Brings a failed request back to its initial state, so that it can be sent again: it's up to the router to call it
+		 */
+		protected void resetForRetry() {
+			completed = false;
+			outcome = null;
+			deadline = Double.MAX_VALUE;
+			transportHandle = null;
+			httpStatus = 0;
+			responseLength = -1;
+			responseText = null;
+			batch = null;	//Retries are always sent alone
+		}
+		
+		/**
+		 * 
+		 * @return The origin (scheme, host and port) of the url, identifying the HostPool the request belongs to
+		 */
+		public String getHost(){
+			return host;
+		}
+		
+		/**
+		 * 
+		 * @return The url where the request is sent
+		 */
+		public String getUrl(){
+			return url;
+		}
+		
 		/**
 		 * 
 		 * @return true <=> this request has urgent priority, and so should be sent right away
@@ -355,11 +926,99 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
 		public void setTimeout(short _timeout) {
 			timeout = _timeout;
 		}
+		
+		/**
+		 * 
+		 * @return The absolute time (in milliseconds) when the request was first handed to the router: the time
+		 * 			it has spent in the idle lane, waiting to be batched or backing off before a retry counts as waiting
+		 */
+		public double getSubmittedAt() {
+			return submittedAt;
+		}
+		
+		/**
+		 * Sets the absolute time when the request has been first handed to the router: it's up to the router to call it
+		 * @param _submittedAt
+		 */
+		protected void setSubmittedAt(double _submittedAt) {
+			submittedAt = _submittedAt;
+		}
+		
+		/**
+		 * 
+		 * @return The absolute time (in milliseconds) when the request was (last) submitted to the scheduler
+		 */
+		public double getEnqueuedAt() {
+			return enqueuedAt;
+		}
+		
+		/**
+		 * 
+		 * @return The absolute time (in milliseconds) by which the request should be completed: its submission time plus
+		 * 			its timeout, or Double.MAX_VALUE if it has no timeout
+		 */
+		public double getDueAt() {
+			return SchedulingPolicy.dueAt(enqueuedAt, timeout);
+		}
+		
+		/**
+		 * Sets the absolute time when the request has been submitted: it's up to the router to call it
+		 * @param _enqueuedAt
+		 */
+		protected void setEnqueuedAt(double _enqueuedAt) {
+			enqueuedAt = _enqueuedAt;
+		}
+		
+		/**
+		 * 
+		 * @return The absolute time (in milliseconds) when the request was sent over the network (0 if it hasn't been sent)
+		 */
+		public double getStartedAt() {
+			return startedAt;
+		}
+		
+		/**
+		 * Sets the absolute time when the request has been sent: it's up to the router to call it
+		 * @param _startedAt
+		 */
+		protected void setStartedAt(double _startedAt) {
+			startedAt = _startedAt;
+		}
+		
+		/**
+		 * 
+		 * @return How the request ended, or null if it hasn't been completed through the network (yet)
+		 */
+		public RequestOutcome getOutcome() {
+			return outcome;
+		}
+		
+		/**
+		 * 
+		 * @return The absolute time (in milliseconds) when the request expires, or Double.MAX_VALUE if it has not been started yet
+		 */
+		public double getDeadline() {
+			return deadline;
+		}
+		
+		/**
+		 * Sets the absolute time when the request expires: it's up to the router's DeadlineScheduler to call it
+		 * @param _deadline
+		 */
+		protected void setDeadline(double _deadline) {
+			deadline = _deadline;
+		}
 
 		public RequestPriority getPriority() {
 			return priority;
 		}
 
+		/**
+		 * Sets the request's priority.
+		 * NOTE: Once the request has been added to a router, use AJAXRequestRouter.reprioritize instead, so
+		 * that the router's waiting queue is kept in order
+		 * @param priority
+		 */
 		public void setPriority(RequestPriority priority) {
 			this.priority = priority;
 		}
@@ -389,9 +1048,12 @@ public class AJAXRequest<T extends JavaScriptObject> implements Comparable<AJAXR
  			}
 		}
 		*/
-		/** DEBUG
+		/**
+		 * 
+		 * @return The unique ID of the request (IDs grow with creation time)
+		 */
 		public int getID(){
 			return requestID;
 		}
-		*/	
+
 }
\ No newline at end of file
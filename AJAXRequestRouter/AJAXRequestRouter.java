@@ -1,12 +1,24 @@
 package com.smartgwt.extensions.utility.requestrouter;
 
-import java.util.PriorityQueue;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Vector;
 
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.user.client.Timer;
 import com.smartgwt.extensions.utility.requestrouter.jsarray.JsArrayResponseHandler;
 import com.smartgwt.extensions.utility.requestrouter.json.JSONArrayResponseHandler;
 import com.smartgwt.extensions.utility.requestrouter.json.JSONObjectResponseHandler;
 import com.smartgwt.extensions.utility.requestrouter.json.StringJSONResponseHandler;
+import com.smartgwt.extensions.utility.requestrouter.overlay.ShapeDecoder;
+import com.smartgwt.extensions.utility.requestrouter.overlay.TypedArrayResponseHandler;
+import com.smartgwt.extensions.utility.requestrouter.stream.StreamResponseHandler;
 
 
 /**
@@ -18,8 +30,32 @@ import com.smartgwt.extensions.utility.requestrouter.json.StringJSONResponseHand
  * waiting_queue and be sent right away. However, there is a maximum number (which can be set through setMaxContemporaryRequests method)
  * of Urgent Requests that may be sent when the waiting queue is full.
  * 
+ * Each router is independent, with its own queues, limits, caches and metrics: besides the default one (see get),
+ * any number of routers can be created, f.i. one for each module, and optionally capped together through
+ * a SharedSlotLimit.
+ * 
+ * Requests are grouped by origin in HostPools, each with its own waiting queue and, optionally, its own limits
+ * on concurrent (and concurrent urgent) requests; the router's limits are shared among all the hosts.
+ * Queueing and dispatch are carried out by a RequestScheduler, which doesn't depend on GWT: the router feeds it
+ * the requests and sends the ones it gives a slot to.
+ * 
+ * Each host can be guarded by a CircuitBreaker: while a host is failing, requests to it fail fast, without
+ * taking any slot.
+ * 
+ * The waiting queue can be bounded (see setMaxWaitingRequests): when it's full, requests are shed according to
+ * a LoadSheddingPolicy, and their handlers are notified without the requests being sent.
+ * 
+ * Responses can be kept across page reloads by a PersistentResponseCache (see setPersistentCache), backed by
+ * IndexedDB or localStorage: at cold start they are served right away, while they are refreshed in background.
+ * 
+ * Failed requests can be sent again according to their RetryPolicy (or the router's default one), within a
+ * router-wide RetryBudget; while waiting for a retry, requests don't hold any slot.
+ * 
+ * Requests are sent through a RequestTransport: JSONP script injection by default, or CORS XMLHttpRequest
+ * (XhrTransport), which can be chosen for single requests, for a host or for every request.
+ * 
  * The Router uses overloading and polymorphism to automatically ask for a specific type of data from the
- * remote server; at the moment, the response can be of one of the following three types:
+ * remote server; at the moment, the response can be of one of the following types (see ResponseType):
  * 1) JavaScriptObject						<-> A simple JavaScriptObject which may be later converted to the
  * 												desired type
  * 2) JsArray<T extends JavaScriptObject>	<-> An array of Data Object; it is particularly useful when data
@@ -29,6 +65,12 @@ import com.smartgwt.extensions.utility.requestrouter.json.StringJSONResponseHand
  * 												the JSON specifications; it may be later parsed by JSONParser
  * 4) JSONObject							<-> An object belonging to the JSONObject class
  * 5) JSONArray								<-> An array of JSONObjects
+ * 6) JsArray<T> streamed in chunks			<-> An NDJSON response (one record per line), delivered to a
+ * 												StreamResponseHandler<T> a chunk of records at a time, while
+ * 												it's downloaded (STREAM)
+ * 7) Typed array of S						<-> A JsArray whose records are validated against a ShapeDecoder<S>
+ * 												before being delivered to a TypedArrayResponseHandler<S>
+ * 												(TYPED_ARRAY)
  * 
  * 
  * The choice of the return type is made by the caller simply by choosing the type of the class which is going
@@ -42,41 +84,226 @@ public class AJAXRequestRouter {
 	
 	private static final byte DEFAULT_QUEUE_SIZE = 5;
 	
-	private static short maxContemporaryRequests = DEFAULT_QUEUE_SIZE;
-	
 	private static final byte DEFAULT_URGENT_QUEUE_SIZE = 1;
 	
 	/**
-	 * How many urgent requests may be issued at the same time
+	 * The queueing and dispatch core: limits, started requests and the HostPools with their waiting queues
 	 */
-	private static short maxContemporaryUrgentRequests = DEFAULT_URGENT_QUEUE_SIZE;
+	@SuppressWarnings("rawtypes")
+	private RequestScheduler<AJAXRequest, HostPool> scheduler;
 	
+	/**
+	 * Sends the requests the scheduler gives a slot to
+	 */
 	@SuppressWarnings("rawtypes")
-	private static PriorityQueue<AJAXRequest> waiting_queue;
+	private final Dispatcher<AJAXRequest> dispatcher = new Dispatcher<AJAXRequest>() {
+		@Override
+		public void start(AJAXRequest request) {
+			startRequest(request);
+		}
+	};
+	
+	/**
+	 * Tracks the deadlines of all the started requests with a single shared timer
+	 */
+	private DeadlineScheduler deadlines;
+	
+	/**
+	 * Requests waiting or in flight, indexed by their coalescing key (response type + url)
+	 */
 	@SuppressWarnings("rawtypes")
-	private static Vector<AJAXRequest> queue_started;
+	private HashMap<String, AJAXRequest> pending_requests;
+	
+	/**
+	 * When true, a request identical to one already waiting or in flight is not sent: its handler is attached
+	 * to the pending request instead
+	 */
+	private boolean requestCoalescing = true;
+	
+	/**
+	 * How many network calls have been saved by coalescing identical requests
+	 */
+	private int coalescedRequestsCount = 0;
+	
+	/**
+	 * Responses of the requests with a positive cache TTL
+	 */
+	private ResponseCache responseCache;
+	
+	/**
+	 * Responses of the requests with a positive persistent TTL, kept across page reloads (null <=> not used)
+	 */
+	private PersistentResponseCache persistentCache = null;
+	
+	/**
+	 * Requests waiting for the persistent cache to be looked up
+	 */
 	@SuppressWarnings("rawtypes")
-	private static Vector<AJAXRequest> queue_urgent;
+	private HashSet<AJAXRequest> persistent_lookups;
+	
+	/**
+	 * A group of requests, sharing the same batch key, waiting to be merged into a single call
+	 */
+	private class PendingBatch {
+		private final BatchRule rule;
+		private final String key;
+		@SuppressWarnings("rawtypes")
+		private final Vector<AJAXRequest> requests = new Vector<AJAXRequest>();
+		private final Timer linger = new Timer() {
+			@Override
+			public void run() {
+				flushBatch(PendingBatch.this);
+			}
+		};
+		
+		private PendingBatch(BatchRule _rule, String _key){
+			rule = _rule;
+			key = _key;
+		}
+	}
+	
+	/**
+	 * Rules by which requests can be merged into a single call, and the groups of requests waiting to be merged by each rule 
+	 */
+	private Vector<BatchRule> batch_rules;
+	private HashMap<BatchRule, HashMap<String, PendingBatch>> pending_batches;
+	
+	/**
+	 * How many network calls have been saved by merging requests into batches
+	 */
+	private int batchedRequestsCount = 0;
+	
+	/**
+	 * When set, it drives maxContemporaryRequests according to the observed round-trip times and timeouts
+	 */
+	private AdaptiveConcurrencyLimit concurrencyLimit = null;
+	
+	private final ConcurrencyLimitListener concurrencyLimitListener = new ConcurrencyLimitListener() {
+		@Override
+		public void onLimitChanged(int oldLimit, int newLimit) {
+			scheduler.setMaxContemporaryRequests((short) newLimit);
+			scheduler.dispatch();	//If the limit becomes larger, maybe new requests can be started
+		}
+	};
+	
+	/**
+	 * The retry policy of the requests which don't set their own (null <=> they are not retried)
+	 */
+	private RetryPolicy defaultRetryPolicy = null;
+	
+	/**
+	 * Limits the retries to a fraction of the requests submitted, so that they can't amplify an outage
+	 */
+	private RetryBudget retryBudget;
+	
+	/**
+	 * Failed requests waiting to be sent again, with the timer of their backoff
+	 */
+	@SuppressWarnings("rawtypes")
+	private HashMap<AJAXRequest, Timer> backing_off;
+	
+	/**
+	 * Default for the longest time (in milliseconds) a LOW priority request may wait for the page to be idle
+	 */
+	public static final int DEFAULT_MAX_IDLE_DEFERRAL = 2000;
+	
+	/**
+	 * Below this much idle time left (in milliseconds), no more LOW priority requests are started in an idle period
+	 */
+	private static final double MIN_IDLE_TIME = 1.;
+	
+	/**
+	 * When true, LOW priority requests are only submitted to the scheduler while the page is idle
+	 */
+	private boolean idleLane = false;
+	
+	private int maxIdleDeferral = DEFAULT_MAX_IDLE_DEFERRAL;
+	
+	/**
+	 * LOW priority requests waiting for the page to be idle, in arrival order, with the time they arrived
+	 */
+	@SuppressWarnings("rawtypes")
+	private LinkedHashMap<AJAXRequest, Double> idle_lane;
+	
+	/**
+	 * True <=> a callback is already scheduled to drain the idle lane
+	 */
+	private boolean idleCallbackPending = false;
+	
+	/**
+	 * Value of maxWaitingRequests meaning that the waiting queue is unbounded
+	 */
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+	
+	/**
+	 * The maximum number of requests waiting for a slot, to any host: beyond it, requests are shed
+	 */
+	private int maxWaitingRequests = UNBOUNDED;
+	
+	private LoadSheddingPolicy loadSheddingPolicy = LoadSheddingPolicy.REJECT_NEWEST;
+	
+	/**
+	 * The breaker copied for each host which doesn't have its own (null <=> hosts have no breaker by default)
+	 */
+	private CircuitBreaker defaultCircuitBreaker = null;
+	
+	/**
+	 * The transport used for requests which don't set their own, and whose host doesn't have its own
+	 */
+	private RequestTransport defaultTransport = JsonpTransport.get();
+	
+	/**
+	 * The strict-priority policy (the default one), which may let requests' priority rise while they wait
+	 */
+	private PriorityAging aging;
 	
+	/**
+	 * Gauges, counters and latency histograms (including the time requests spend waiting for a slot, by priority)
+	 */
+	private RouterMetrics metrics;
+	
+	/**
+	 * The default router, shared by the modules which don't need one of their own
+	 */
 	protected static AJAXRequestRouter router = null;
 	
 	
 	
 
 	/**
-	 * Singleton class => private constructor
+	 * Creates a router independent of any other: its queues, limits, caches and metrics are its own, so that
+	 * f.i. a module's background traffic can run in its own router without crowding out interactive requests
+	 * (see also setSharedLimit). Modules which don't need one of their own can share the default router (see get)
 	 */
 	@SuppressWarnings("rawtypes")
-	protected AJAXRequestRouter() {
-		waiting_queue = new PriorityQueue<AJAXRequest>();
-		queue_started = new Vector<AJAXRequest>();
-		queue_urgent  = new Vector<AJAXRequest>();
-		router = this;
+	public AJAXRequestRouter() {
+		aging = new PriorityAging();
+		scheduler = new RequestScheduler<AJAXRequest, HostPool>(dispatcher, aging, 
+				(short) DEFAULT_QUEUE_SIZE, (short) DEFAULT_URGENT_QUEUE_SIZE) {
+			@Override
+			protected HostPool newPool(String host) {
+				HostPool pool = new HostPool(host, getOrdering());
+				if ( defaultCircuitBreaker != null ){
+					pool.setCircuitBreaker(new CircuitBreaker(defaultCircuitBreaker));
+				}
+				return pool;
+			}
+		};
+		metrics = new RouterMetrics(this);
+		deadlines = new DeadlineScheduler(this);
+		pending_requests = new HashMap<String, AJAXRequest>();
+		responseCache = new ResponseCache();
+		persistent_lookups = new HashSet<AJAXRequest>();
+		batch_rules = new Vector<BatchRule>();
+		pending_batches = new HashMap<BatchRule, HashMap<String, PendingBatch>>();
+		retryBudget = new RetryBudget();
+		backing_off = new HashMap<AJAXRequest, Timer>();
+		idle_lane = new LinkedHashMap<AJAXRequest, Double>();
 	}
 	
 	/**
 	 * 
-	 * @return A reference to the singleton AJAXRequestRouter object 
+	 * @return A reference to the default AJAXRequestRouter object, which is created the first time it's needed
 	 */
 	public static AJAXRequestRouter get(){
 		if (router == null){
@@ -91,49 +318,550 @@ public class AJAXRequestRouter {
 	 * @return The maximum number of concurrent AJAX request that, at the moment, may be processed together at the same time
 	 */
 	public short getMaxContemporaryRequests() {
-		return maxContemporaryRequests;
+		return scheduler.getMaxContemporaryRequests();
 	}
 
 	/**
 	 * Sets the maximum number of concurrent AJAX request that may be processed together at the same time
+	 * NOTE: If an adaptive concurrency limit is set, it will override this value as soon as it changes
 	 * @param maxContemporaryRequests The value to be set (must be >= 1)
 	 */
 	public void setMaxContemporaryRequests(short maxContemporaryRequests) throws IllegalArgumentException{
 		if (maxContemporaryRequests < 1 ){
 			throw new IllegalArgumentException();
 		}
-		AJAXRequestRouter.maxContemporaryRequests = maxContemporaryRequests;
-		sendNextRequestInQueue();	//If the waiting_queue becomes larger, maybe new requests can be started
+		scheduler.setMaxContemporaryRequests(maxContemporaryRequests);
+		scheduler.dispatch();	//If the waiting_queue becomes larger, maybe new requests can be started
+	}
+	
+	/**
+	 * 
+	 * @return The cap on the requests in flight shared with other routers (null if there is none)
+	 */
+	public SharedSlotLimit getSharedLimit() {
+		return scheduler.getSharedLimit();
+	}
+	
+	/**
+	 * Makes the router share a cap on the requests in flight with other routers (f.i. a global cap across all the
+	 * application's routers), on top of its own limits: when a shared slot is freed, the routers sharing the cap
+	 * take turns to start their waiting requests
+	 * @param limit The cap to be shared (null <=> only the router's own limits apply)
+	 */
+	public void setSharedLimit(SharedSlotLimit limit) {
+		scheduler.setSharedLimit(limit);
+		scheduler.dispatch();
+	}
+	
+	/**
+	 * 
+	 * @return The adaptive limit driving the maximum number of concurrent requests, or null if the limit is fixed
+	 */
+	public AdaptiveConcurrencyLimit getAdaptiveConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+	
+	/**
+	 * Lets an adaptive limit drive the maximum number of concurrent requests, according to the round-trip times
+	 * and the timeouts observed: listeners added to the limit are notified of each change
+	 * @param limit The adaptive limit (null <=> the limit stays fixed at its current value)
+	 */
+	public void setAdaptiveConcurrencyLimit(AdaptiveConcurrencyLimit limit) {
+		if ( concurrencyLimit != null ){
+			concurrencyLimit.removeListener(concurrencyLimitListener);
+		}
+		concurrencyLimit = limit;
+		if ( limit != null ){
+			limit.addListener(concurrencyLimitListener);
+			concurrencyLimitListener.onLimitChanged(scheduler.getMaxContemporaryRequests(), limit.getLimit());
+		}
+	}
+	
+	/**
+	 * 
+	 * @return The maximum number of concurrent <b>URGENT</b> AJAX request.
+	 * Urgent requests are sent immediately even if the request waiting_queue is full, but there is only a limited
+	 * number of Urgent requests that can be sent at the same time
+	 */
+	public short getMaxContemporaryUrgentRequests() {
+		return scheduler.getMaxContemporaryUrgentRequests();
+	}
+
+	/**
+	 * Sets the maximum number of concurrent <b>URGENT</b> AJAX request 
+	 * Urgent requests are sent immediately even if the request waiting_queue is full, but there is only a limited
+	 * number of Urgent requests that can be sent at the same time
+	 * @param maxContemporaryUrgentRequests The value to be set (must be >= 0 - when it is equal to zero it means
+	 * that urgent requests must wait as any other)
+	 */
+	public void setMaxContemporaryUrgentRequests(short maxContemporaryUrgentRequests) throws IllegalArgumentException{
+		if (maxContemporaryUrgentRequests < 0 ){
+			throw new IllegalArgumentException();
+		}
+		scheduler.setMaxContemporaryUrgentRequests(maxContemporaryUrgentRequests);
+		//If the waiting_queue becomes larger, maybe new requests can be started, but for thread safety it's better 
+		//not messing with the waiting_queue (there may be a poll action between the priority check of the head of the waiting_queue
+		//and its subsequent extraction)
+		//URGENT requests will be issued first anyway
+	}	
+
+	
+	/**
+	 * 
+	 * @param url An url, or just the origin (scheme, host and port), of the host 
+	 * @return The slot pool of the host, which is created if it doesn't exist yet
+	 */
+	public HostPool getHostPool(String url){
+		return scheduler.getPool(HostPool.getOrigin(url));
+	}
+	
+	/**
+	 * 
+	 * @return The slot pools of all the hosts the router has been used for, or configured for
+	 */
+	public Collection<HostPool> getHostPools(){
+		return scheduler.getPools();
+	}
+	
+	/**
+	 * Sets the maximum number of concurrent AJAX requests to a single host; the router's global limit still applies
+	 * @param url An url, or just the origin (scheme, host and port), of the host
+	 * @param maxContemporaryRequests The value to be set (must be >= 1; HostPool.UNLIMITED means that only the router's limit applies)
+	 */
+	public void setHostMaxContemporaryRequests(String url, short maxContemporaryRequests) throws IllegalArgumentException{
+		if (maxContemporaryRequests < 1 ){
+			throw new IllegalArgumentException();
+		}
+		getHostPool(url).setMaxContemporaryRequests(maxContemporaryRequests);
+		scheduler.dispatch();	//If the host's limit becomes larger, maybe new requests can be started
+	}
+	
+	/**
+	 * Sets the maximum number of concurrent <b>URGENT</b> AJAX requests to a single host; the router's global limit still applies
+	 * @param url An url, or just the origin (scheme, host and port), of the host
+	 * @param maxContemporaryUrgentRequests The value to be set (must be >= 0; HostPool.UNLIMITED means that only the router's limit applies)
+	 */
+	public void setHostMaxContemporaryUrgentRequests(String url, short maxContemporaryUrgentRequests) throws IllegalArgumentException{
+		if (maxContemporaryUrgentRequests < 0 ){
+			throw new IllegalArgumentException();
+		}
+		getHostPool(url).setMaxContemporaryUrgentRequests(maxContemporaryUrgentRequests);
+	}
+	
+	/**
+	 * Sets the transport used for the requests to a host which don't set their own
+	 * @param url An url, or just the origin (scheme, host and port), of the host
+	 * @param transport The transport to be used (null <=> the router's default transport)
+	 */
+	public void setHostTransport(String url, RequestTransport transport){
+		getHostPool(url).setTransport(transport);
+	}
+	
+	/**
+	 * Sets the circuit breaker of a host, replacing its current one
+	 * @param url An url, or just the origin (scheme, host and port), of the host
+	 * @param breaker The breaker to be used: it MUST NOT guard any other host (null <=> requests to the host are never failed fast)
+	 */
+	public void setHostCircuitBreaker(String url, CircuitBreaker breaker){
+		getHostPool(url).setCircuitBreaker(breaker);
+	}
+	
+	/**
+	 * 
+	 * @return The breaker copied for each host which doesn't have its own (null if hosts have no breaker by default)
+	 */
+	public CircuitBreaker getDefaultCircuitBreaker() {
+		return defaultCircuitBreaker;
+	}
+	
+	/**
+	 * Sets the breaker copied (parameters and listeners) for each host which doesn't have its own, including
+	 * the hosts the router has already been used for
+	 * @param prototype The breaker to be copied: it is never used directly (null <=> hosts have no breaker by default)
+	 */
+	public void setDefaultCircuitBreaker(CircuitBreaker prototype) {
+		this.defaultCircuitBreaker = prototype;
+		if ( prototype != null ){
+			for ( HostPool pool : scheduler.getPools() ){
+				if ( pool.getCircuitBreaker() == null ){
+					pool.setCircuitBreaker(new CircuitBreaker(prototype));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return The transport used for the requests which don't set their own, and whose host doesn't have its own
+	 */
+	public RequestTransport getDefaultTransport() {
+		return defaultTransport;
+	}
+	
+	/**
+	 * Sets the transport used for the requests which don't set their own, and whose host doesn't have its own
+	 * (by default, JSONP)
+	 * @param transport The value to be set (must not be null)
+	 */
+	public void setDefaultTransport(RequestTransport transport) throws IllegalArgumentException{
+		if ( transport == null ){
+			throw new IllegalArgumentException();
+		}
+		this.defaultTransport = transport;
+	}
+	
+	/**
+	 * 
+	 * @return How many requests, to any host, are waiting for a slot
+	 */
+	public int getWaitingRequestsCount(){
+		return scheduler.getWaitingRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @param url An url, or just the origin (scheme, host and port), of the host
+	 * @return How many requests to the host are waiting for a slot
+	 */
+	public int getWaitingRequestsCount(String url){
+		HostPool pool = scheduler.findPool(HostPool.getOrigin(url));
+		return pool == null ? 0 : pool.getWaitingRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @return How many requests, to any host, are in flight in the standard slots
+	 */
+	public int getStartedRequestsCount(){
+		return scheduler.getStartedRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @return How many requests, to any host, are in flight in the urgent slots
+	 */
+	public int getUrgentRequestsCount(){
+		return scheduler.getUrgentRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @return The maximum number of requests waiting for a slot, to any host (UNBOUNDED <=> there is no limit)
+	 */
+	public int getMaxWaitingRequests() {
+		return maxWaitingRequests;
+	}
+	
+	/**
+	 * Bounds the waiting queue: when a request has to wait and the queue is already full, a request is shed
+	 * according to the load shedding policy, so that bursts don't pile up requests which would be useless by
+	 * the time they were sent. Shed requests are completed without being sent, and their handlers are notified
+	 * through LoadSheddingHandler.onShed, if they implement it, or else through onFailure.
+	 * Requests waiting for the idle lane, for a retry or to be merged into a batch are not counted.
+	 * NOTE: If the queue is already longer, it is only brought within the limit as new requests arrive
+	 * @param _maxWaitingRequests The value to be set (must be >= 0; UNBOUNDED <=> there is no limit)
+	 */
+	public void setMaxWaitingRequests(int _maxWaitingRequests) throws IllegalArgumentException{
+		if ( _maxWaitingRequests < 0 ){
+			throw new IllegalArgumentException();
+		}
+		this.maxWaitingRequests = _maxWaitingRequests;
+	}
+	
+	/**
+	 * 
+	 * @return Which requests are shed when the waiting queue is full
+	 */
+	public LoadSheddingPolicy getLoadSheddingPolicy() {
+		return loadSheddingPolicy;
+	}
+	
+	/**
+	 * Sets which requests are shed when the waiting queue is full (by default, the one that has just arrived)
+	 * @param policy The value to be set (must not be null)
+	 */
+	public void setLoadSheddingPolicy(LoadSheddingPolicy policy) throws IllegalArgumentException{
+		if ( policy == null ){
+			throw new IllegalArgumentException();
+		}
+		this.loadSheddingPolicy = policy;
+	}
+	
+	/**
+	 * 
+	 * @return true <=> LOW priority requests are only started while the page is idle
+	 */
+	public boolean isIdleLaneEnabled() {
+		return idleLane;
+	}
+	
+	/**
+	 * Enables or disables the idle lane: when it is enabled, LOW priority requests are held until the browser
+	 * reports the main thread as idle (through requestIdleCallback, where available), so that background traffic
+	 * doesn't compete with interactive requests and animations; each idle period starts as many of them as it
+	 * has time and free slots for. No request is held longer than maxIdleDeferral.
+	 * Where requestIdleCallback isn't available, held requests are started one per event loop turn.
+	 * Disabling the lane submits right away the requests it's holding.
+	 * @param enabled
+	 */
+	@SuppressWarnings("rawtypes")
+	public void setIdleLaneEnabled(boolean enabled) {
+		this.idleLane = enabled;
+		if ( !enabled ){
+			for ( AJAXRequest request : new Vector<AJAXRequest>(idle_lane.keySet()) ){
+				idle_lane.remove(request);
+				submitRequest(request);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return The longest time (in milliseconds) a LOW priority request may be held by the idle lane
+	 */
+	public int getMaxIdleDeferral() {
+		return maxIdleDeferral;
+	}
+	
+	/**
+	 * Sets the longest time a LOW priority request may be held by the idle lane: after that, it is submitted even
+	 * if the page is still busy
+	 * @param _maxIdleDeferral The value to be set (in milliseconds, must be >= 0)
+	 */
+	public void setMaxIdleDeferral(int _maxIdleDeferral) throws IllegalArgumentException{
+		if ( _maxIdleDeferral < 0 ){
+			throw new IllegalArgumentException();
+		}
+		this.maxIdleDeferral = _maxIdleDeferral;
+	}
+	
+	/**
+	 * 
+	 * @return How many LOW priority requests are held by the idle lane
+	 */
+	public int getIdleRequestsCount(){
+		return idle_lane.size();
+	}
+	
+	/**
+	 * Enables batching for the requests matched by a rule: requests sharing the same batch key are held for a
+	 * short time and then merged into a single call, whose response is split among them
+	 * @param rule The rule to be added
+	 */
+	public void addBatchRule(BatchRule rule){
+		if ( !batch_rules.contains(rule) ){
+			batch_rules.add(rule);
+			pending_batches.put(rule, new HashMap<String, PendingBatch>());
+		}
+	}
+	
+	/**
+	 * Disables a batching rule: the requests waiting to be merged by it are sent right away
+	 * @param rule The rule to be removed
+	 */
+	public void removeBatchRule(BatchRule rule){
+		if ( batch_rules.remove(rule) ){
+			for ( PendingBatch batch : new Vector<PendingBatch>(pending_batches.remove(rule).values()) ){
+				batch.linger.cancel();
+				sendBatch(batch);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return How many network calls have been saved so far by merging requests into batches
+	 */
+	public int getBatchedRequestsCount() {
+		return batchedRequestsCount;
+	}
+	
+	/**
+	 * 
+	 * @return The strict-priority policy, with its aging settings (it orders the waiting queues unless another
+	 * 			policy has been set)
+	 */
+	public PriorityAging getPriorityAging(){
+		return aging;
+	}
+	
+	/**
+	 * 
+	 * @return The policy choosing which waiting request gets the next free slot
+	 */
+	public SchedulingPolicy getSchedulingPolicy(){
+		return scheduler.getPolicy();
+	}
+	
+	/**
+	 * Sets the policy choosing which waiting request gets the next free slot (by default, strict priority):
+	 * f.i. an EarliestDeadlineFirst policy minimizes the requests expiring while they wait, and a WeightedRoundRobin
+	 * one keeps lower priorities from being starved. The waiting requests are reordered right away.
+	 * @param policy The policy to be used: it MUST NOT be shared with other routers (null <=> strict priority, with
+	 * 			the settings of getPriorityAging)
+	 */
+	public void setSchedulingPolicy(SchedulingPolicy policy){
+		scheduler.setPolicy(policy != null ? policy : aging);
+	}
+	
+	/**
+	 * Sets the aging policy of waiting requests: a waiting request gains one priority level every agingInterval
+	 * milliseconds, until it reaches the cap priority, so that LOW requests can't wait forever.
+	 * Requests with a priority higher than the cap always come first.
+	 * @param agingInterval How many milliseconds of waiting make a request gain one priority level (non positive <=> aging disabled)
+	 * @param cap The highest priority a request can reach by aging
+	 */
+	public void setPriorityAging(int agingInterval, RequestPriority cap){
+		aging.setAgingInterval(agingInterval);
+		aging.setCap(cap);
+		scheduler.reorder();
+	}
+	
+	/**
+	 * 
+	 * @param priority
+	 * @return The longest time (in milliseconds) a request with the given priority has waited before being started,
+	 * 			since it was handed to the router (see AJAXRequest.getSubmittedAt)
+	 */
+	public double getMaxQueueWait(RequestPriority priority){
+		return metrics.getQueueWait(priority).getMax();
+	}
+	
+	/**
+	 * 
+	 * @param priority
+	 * @return The average time (in milliseconds) requests with the given priority have waited before being started,
+	 * 			since they were handed to the router (see AJAXRequest.getSubmittedAt)
+	 */
+	public double getAverageQueueWait(RequestPriority priority){
+		return metrics.getQueueWait(priority).getMean();
+	}
+	
+	/**
+	 * Resets the statistics on the time requests have waited before being started
+	 */
+	public void resetQueueWaitStats(){
+		metrics.resetQueueWait();
+	}
+	
+	/**
+	 * 
+	 * @return The metrics of the router, which can be polled or exported as JSON
+	 */
+	public RouterMetrics getMetrics(){
+		return metrics;
+	}
+	
+	/**
+	 * 
+	 * @return The retry policy of the requests which don't set their own (null <=> they are not retried)
+	 */
+	public RetryPolicy getDefaultRetryPolicy() {
+		return defaultRetryPolicy;
+	}
+	
+	/**
+	 * Sets the retry policy of the requests which don't set their own
+	 * @param retryPolicy The value to be set (null, the default, <=> requests are not retried)
+	 */
+	public void setDefaultRetryPolicy(RetryPolicy retryPolicy) {
+		this.defaultRetryPolicy = retryPolicy;
+	}
+	
+	/**
+	 * 
+	 * @return The router-wide limit on retries: its statistics can be read through this reference
+	 */
+	public RetryBudget getRetryBudget() {
+		return retryBudget;
+	}
+	
+	/**
+	 * Sets the router-wide limit on retries (by default, 10% of the requests submitted)
+	 * @param budget The value to be set (must not be null)
+	 */
+	public void setRetryBudget(RetryBudget budget) throws IllegalArgumentException{
+		if ( budget == null ){
+			throw new IllegalArgumentException();
+		}
+		this.retryBudget = budget;
+	}
+	
+	/**
+	 * 
+	 * @return How many failed requests are waiting to be sent again
+	 */
+	public int getBackingOffRequestsCount(){
+		return backing_off.size();
+	}
+	
+	/**
+	 * 
+	 * @return true <=> identical requests (same url and response type) waiting or in flight at the same time are served by a single network call
+	 */
+	public boolean isRequestCoalescing() {
+		return requestCoalescing;
+	}
+
+	/**
+	 * Enables or disables the coalescing of identical requests: when enabled, a new request with the same url and
+	 * response type as one already waiting or in flight just attaches its handler to the pending request, and
+	 * the single response is delivered to every handler
+	 * @param requestCoalescing
+	 */
+	public void setRequestCoalescing(boolean requestCoalescing) {
+		this.requestCoalescing = requestCoalescing;
+	}
+	
+	/**
+	 * 
+	 * @return How many network calls have been saved so far by coalescing identical requests
+	 */
+	public int getCoalescedRequestsCount() {
+		return coalescedRequestsCount;
+	}
+	
+	/**
+	 * Resets the count of coalesced requests
+	 */
+	public void resetCoalescedRequestsCount() {
+		coalescedRequestsCount = 0;
+	}
+	
+	/**
+	 * 
+	 * @return The cache used for the responses of requests with a positive cache TTL: its budget can be set
+	 * and its hit/miss/eviction statistics read through this reference
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+	
+	/**
+	 * 
+	 * @return The cache keeping the responses of requests with a positive persistent TTL across page reloads (null if there is none)
+	 */
+	public PersistentResponseCache getPersistentCache() {
+		return persistentCache;
 	}
 	
 	/**
-	 * 
-	 * @return The maximum number of concurrent <b>URGENT</b> AJAX request.
-	 * Urgent requests are sent immediately even if the request waiting_queue is full, but there is only a limited
-	 * number of Urgent requests that can be sent at the same time
+	 * Sets the cache keeping the responses of requests with a positive persistent TTL (see AJAXRequest.setPersistentTTL)
+	 * across page reloads. It's only looked up for responses the in-memory cache hasn't seen yet: the stored
+	 * response is served right away, and the request is sent in background with LOW priority to refresh it.
+	 * @param cache The cache to be used (null <=> no persistent cache)
 	 */
-	public short getMaxContemporaryUrgentRequests() {
-		return maxContemporaryRequests;
+	public void setPersistentCache(PersistentResponseCache cache) {
+		this.persistentCache = cache;
 	}
-
+	
 	/**
-	 * Sets the maximum number of concurrent <b>URGENT</b> AJAX request 
-	 * Urgent requests are sent immediately even if the request waiting_queue is full, but there is only a limited
-	 * number of Urgent requests that can be sent at the same time
-	 * @param maxContemporaryUrgentRequests The value to be set (must be >= 0 - when it is equal to zero it means
-	 * that urgent requests must wait as any other)
+	 * Add an AJAX request, created and configured by the caller (f.i. to set its cache TTL), to the waiting_queue.
+	 * @param request The request to be sent: it MUST have been created for this router
 	 */
-	public void setMaxContemporaryUrgentRequests(short maxContemporaryUrgentRequests) throws IllegalArgumentException{
-		if (maxContemporaryUrgentRequests < 0 ){
-			throw new IllegalArgumentException();
-		}
-		AJAXRequestRouter.maxContemporaryUrgentRequests  = maxContemporaryUrgentRequests;
-		//If the waiting_queue becomes larger, maybe new requests can be started, but for thread safety it's better 
-		//not messing with the waiting_queue (there may be a poll action between the priority check of the head of the waiting_queue
-		//and its subsequent extraction)
-		//URGENT requests will be issued first anyway
-	}	
-
+	public void addRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
+		sendNewRequest(request);
+	}
 	
 	/**
 	 * Add a new AJAX request to the waiting_queue. No timeout parameter is passed, so the default value set in AJAXRequest class is used instead;
@@ -142,7 +870,7 @@ public class AJAXRequestRouter {
 	 */
 	 public void addNewRequest(String url, AJAXResponseHandler handler){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		sendNewRequest(request);
 	}
 		
@@ -155,7 +883,7 @@ public class AJAXRequestRouter {
 	 */
 	public void addNewRequest(String url, AJAXResponseHandler handler, RequestPriority priority, short timeout){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		request.setPriority(priority);
 		request.setTimeout(timeout);
 		sendNewRequest(request);
@@ -168,7 +896,7 @@ public class AJAXRequestRouter {
 	 */
 	 @SuppressWarnings({ "rawtypes", "unchecked" })
 	 public void addNewRequest(String url, JsArrayResponseHandler handler){
-		 AJAXRequest request = new AJAXRequest(url, router, handler);
+		 AJAXRequest request = new AJAXRequest(url, this, handler);
 		 sendNewRequest(request);
 
 	}	 
@@ -182,7 +910,7 @@ public class AJAXRequestRouter {
 	 */
 	 @SuppressWarnings({ "rawtypes", "unchecked" })
 	public void addNewRequest(String url, JsArrayResponseHandler handler, RequestPriority priority, short timeout){
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		request.setPriority(priority);
 		request.setTimeout(timeout);		
 		sendNewRequest(request);
@@ -195,7 +923,7 @@ public class AJAXRequestRouter {
 	 */
 	 public void addNewRequest(String url, StringJSONResponseHandler handler){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		sendNewRequest(request);
 
 	}	 
@@ -209,7 +937,7 @@ public class AJAXRequestRouter {
 	 */
 	public void addNewRequest(String url, StringJSONResponseHandler handler, RequestPriority priority, short timeout){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		request.setPriority(priority);
 		request.setTimeout(timeout);
 		sendNewRequest(request);
@@ -222,7 +950,7 @@ public class AJAXRequestRouter {
 	 */
 	 public void addNewRequest(String url, JSONObjectResponseHandler handler){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		sendNewRequest(request);
 
 	}	 
@@ -236,7 +964,7 @@ public class AJAXRequestRouter {
 	 */
 	public void addNewRequest(String url, JSONObjectResponseHandler handler, RequestPriority priority, short timeout){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		request.setPriority(priority);
 		request.setTimeout(timeout);
 		sendNewRequest(request);
@@ -249,7 +977,7 @@ public class AJAXRequestRouter {
 	 */
 	 public void addNewRequest(String url, JSONArrayResponseHandler handler){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		sendNewRequest(request);
 
 	}	 
@@ -263,31 +991,237 @@ public class AJAXRequestRouter {
 	 */
 	public void addNewRequest(String url, JSONArrayResponseHandler handler, RequestPriority priority, short timeout){
 		@SuppressWarnings("rawtypes")
-		AJAXRequest request = new AJAXRequest(url, router, handler);
+		AJAXRequest request = new AJAXRequest(url, this, handler);
+		request.setPriority(priority);
+		request.setTimeout(timeout);
+		sendNewRequest(request);
+	}	
+		
+	/**
+	 * Add a new AJAX request to the waiting_queue. No timeout parameter is passed, so the default value set in AJAXRequest class is used instead;
+	 * @param url The url where the request has to be sent
+	 * @param decoder The ShapeDecoder (created through GWT.create) which validates the response: if it doesn't match the shape, the request fails
+	 * @param handler A class implementing the interface TypedArrayResponseHandler. This class will have to handle the data retrieved and the situations where the waiting_queue is full and the request has to wait or the request fails 
+	 */
+	 public <S> void addNewRequest(String url, ShapeDecoder<S> decoder, TypedArrayResponseHandler<S> handler){
+		@SuppressWarnings("rawtypes")
+		AJAXRequest request = new AJAXRequest(url, this, decoder, handler);
+		sendNewRequest(request);
+
+	}	 
+		
+	/**
+	 * Add a new AJAX request to the waiting_queue
+	 * @param url The url where the request has to be sent
+	 * @param decoder The ShapeDecoder (created through GWT.create) which validates the response: if it doesn't match the shape, the request fails
+	 * @param handler A class implementing the interface TypedArrayResponseHandler. This class will have to handle the data retrieved and the situations where the waiting_queue is full and the request has to wait or the request fails 
+	 * @param priority The request's priority
+	 * @param timeout The maximum duration (in seconds) of the AJAX request (a default value is set in AJAXRequest class)
+	 */
+	public <S> void addNewRequest(String url, ShapeDecoder<S> decoder, TypedArrayResponseHandler<S> handler, RequestPriority priority, short timeout){
+		@SuppressWarnings("rawtypes")
+		AJAXRequest request = new AJAXRequest(url, this, decoder, handler);
+		request.setPriority(priority);
+		request.setTimeout(timeout);
+		sendNewRequest(request);
+	}	
+		
+	/**
+	 * Add a new AJAX request whose response is streamed (as NDJSON) and delivered in chunks of records, to the waiting_queue.
+	 * No timeout parameter is passed, so the default value set in AJAXRequest class is used instead: for streamed requests,
+	 * it is the longest time allowed between two chunks, rather than for the whole download.
+	 * Streamed requests are never cached, coalesced or batched.
+	 * @param url The url where the request has to be sent
+	 * @param handler A class implementing the interface StreamResponseHandler. This class will have to handle the chunks of data retrieved and the situations where the waiting_queue is full and the request has to wait or the request fails 
+	 */
+	 public void addNewRequest(String url, StreamResponseHandler handler){
+		@SuppressWarnings("rawtypes")
+		AJAXRequest request = new AJAXRequest(url, this, handler);
+		sendNewRequest(request);
+
+	}	 
+		
+	/**
+	 * Add a new AJAX request whose response is streamed (as NDJSON) and delivered in chunks of records, to the waiting_queue
+	 * @param url The url where the request has to be sent
+	 * @param handler A class implementing the interface StreamResponseHandler. This class will have to handle the chunks of data retrieved and the situations where the waiting_queue is full and the request has to wait or the request fails 
+	 * @param priority The request's priority
+	 * @param timeout The maximum time (in seconds) allowed between two chunks of the response (a default value is set in AJAXRequest class)
+	 */
+	public void addNewRequest(String url, StreamResponseHandler handler, RequestPriority priority, short timeout){
+		@SuppressWarnings("rawtypes")
+		AJAXRequest request = new AJAXRequest(url, this, handler);
+		request.setPriority(priority);
+		request.setTimeout(timeout);
+		sendNewRequest(request);
+	}	
+		
+	/**
+	 * Add a new AJAX request whose response is streamed (as NDJSON) and delivered in chunks of records, to the waiting_queue
+	 * @param url The url where the request has to be sent
+	 * @param handler A class implementing the interface StreamResponseHandler. This class will have to handle the chunks of data retrieved and the situations where the waiting_queue is full and the request has to wait or the request fails 
+	 * @param priority The request's priority
+	 * @param timeout The maximum time (in seconds) allowed between two chunks of the response (a default value is set in AJAXRequest class)
+	 * @param chunkSize The maximum number of records delivered in a single chunk (must be >= 1)
+	 */
+	public void addNewRequest(String url, StreamResponseHandler handler, RequestPriority priority, short timeout, int chunkSize) throws IllegalArgumentException{
+		@SuppressWarnings("rawtypes")
+		AJAXRequest request = new AJAXRequest(url, this, handler);
 		request.setPriority(priority);
 		request.setTimeout(timeout);
+		request.setChunkSize(chunkSize);
 		sendNewRequest(request);
 	}	
 		
 	/**
+	 * NOTE: When request coalescing is enabled, the request may be shared by several handlers: removing it
+	 * means none of them will be served.
+	 * Removal takes O(log n) time, n being the number of requests in the waiting_queue.
+	 * Requests which have already been sent are not affected: use cancel to stop them.
 	 *  
 	 * @param request
-	 * @return 	RequestStatus.DELETED		<=> The request was actually and still in the waiting waiting_queue;
+	 * @return 	RequestStatus.DELETED		<=> The request was actually and still in the waiting waiting_queue (or waiting for a retry);
 	 * 		   	RequestStatus.STARTED		<=> The request has already been sent
-	 * 			RequestStatus.INVALID		<=>	The request hasn't been enqueued or it has been already completed   
+	 * 			RequestStatus.LOST			<=>	The request hasn't been enqueued or it has been already completed   
+	 * 			RequestStatus.SHED			<=>	The request has been shed, because the waiting queue was full
 	 */
 	public RequestStatus removeRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
-		if ( waiting_queue.remove(request) ){
+		HostPool pool = getHostPool(request.getHost());
+		if ( scheduler.remove(request) || idle_lane.remove(request) != null || removeFromPendingBatch(request) || cancelRetry(request)
+				|| persistent_lookups.remove(request) ){
+			forgetPendingRequest(request);
+			if ( pool.getCircuitBreaker() != null ){
+				pool.getCircuitBreaker().release(request);	//In case it was let through as a probe
+			}
 			return RequestStatus.DELETED;
 		}else{
 
-			if ( queue_started.contains(request) || queue_urgent.contains(request)){
+			if ( scheduler.isStarted(request)
+					|| (request.getBatch() != null && !request.isCompleted()) ){	//A single request can't be removed from a batch
 				return RequestStatus.STARTED;
 			}
 			else{
-				return RequestStatus.LOST;
+				return getLostStatus(request);
+			}
+		}
+	}
+	
+	/**
+	 * Cancels a request, wherever it is: if it has already been sent, its transport is stopped (for JSONP, the
+	 * script element is detached and the request removed from the dispatch table) and its slot is given right away to the next
+	 * waiting request. The handlers of a cancelled request are not notified.
+	 * A request merged into a batch is just detached from it: the batch itself is cancelled once all its
+	 * requests have been.
+	 * NOTE: When request coalescing is enabled, the request may be shared by several handlers: cancelling it
+	 * means none of them will be served.
+	 * 
+	 * @param request The request to be cancelled
+	 * @return 	RequestStatus.DELETED		<=> The request was still waiting (see removeRequest);
+	 * 		   	RequestStatus.CANCELLED		<=> The request had already been sent, and it has been stopped
+	 * 			RequestStatus.LOST			<=>	The request hasn't been enqueued or it has been already completed   
+	 * 			RequestStatus.SHED			<=>	The request has been shed, because the waiting queue was full
+	 */
+	@SuppressWarnings("rawtypes")
+	public RequestStatus cancel(AJAXRequest request){
+		RequestStatus status = removeRequest(request);
+		if ( status != RequestStatus.STARTED ){
+			return status;
+		}//else
+		AJAXRequest batch = request.getBatch();
+		if ( batch != null ){
+			request.markAsCancelled();	//The batch's response will skip it
+			forgetPendingRequest(request);
+			metrics.onCancelled();
+			for ( AJAXRequest r : ((BatchRequest) batch).getRequests() ){
+				if ( !r.isCompleted() ){
+					return RequestStatus.CANCELLED;
+				}
+			}
+			cancel(batch);	//No request is left to be served by the batch
+			return RequestStatus.CANCELLED;
+		}//else
+		if ( request instanceof BatchRequest ){
+			for ( AJAXRequest r : ((BatchRequest) request).getRequests() ){
+				r.markAsCancelled();
+				forgetPendingRequest(r);
+			}
+		}
+		if ( request.getTransport() != null ){
+			request.getTransport().abort(request);
+		}
+		request.markAsCancelled();
+		scheduler.release(request);
+		metrics.onCancelled();
+		HostPool pool = getHostPool(request.getHost());
+		if ( pool.getCircuitBreaker() != null ){
+			pool.getCircuitBreaker().release(request);	//A cancelled probe doesn't tell anything about the host
+		}
+		forgetPendingRequest(request);
+		scheduler.dispatch();
+		return RequestStatus.CANCELLED;
+	}
+	
+	/**
+	 * Cancels every request the router is handling: waiting, in flight, waiting to be merged into a batch or
+	 * waiting for a retry (f.i. when the user navigates away from the page that needed them)
+	 * @return How many requests have been cancelled or removed
+	 */
+	@SuppressWarnings("rawtypes")
+	public int cancelAll(){
+		Vector<AJAXRequest> requests = new Vector<AJAXRequest>(scheduler.getStartedRequests());
+		requests.addAll(scheduler.getWaitingRequests());
+		requests.addAll(backing_off.keySet());
+		requests.addAll(idle_lane.keySet());
+		requests.addAll(persistent_lookups);
+		for ( HashMap<String, PendingBatch> batches : pending_batches.values() ){
+			for ( PendingBatch batch : batches.values() ){
+				requests.addAll(batch.requests);
 			}
 		}
+		int count = 0;
+		for ( AJAXRequest request : requests ){
+			RequestStatus status = cancel(request);
+			if ( status == RequestStatus.CANCELLED || status == RequestStatus.DELETED ){
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Changes the priority of a request which has already been added to the router, keeping the
+	 * waiting_queue in order in O(log n) time.
+	 * A waiting request which becomes URGENT is started right away if there is room for it among urgent requests.
+	 * For requests already started, or waiting for a retry, only the priority value is updated.
+	 * A request held by the idle lane is submitted right away if its priority is raised above LOW.
+	 *  
+	 * @param request The request whose priority has to be changed
+	 * @param priority The new priority
+	 * @return 	RequestStatus.QUEUED		<=> The request is still in the waiting waiting_queue (or waiting for a retry);
+	 * 		   	RequestStatus.STARTED		<=> The request has been sent (possibly right now)
+	 * 			RequestStatus.LOST			<=>	The request hasn't been enqueued or it has been already completed   
+	 * 			RequestStatus.SHED			<=>	The request has been shed, because the waiting queue was full
+	 */
+	public RequestStatus reprioritize(@SuppressWarnings("rawtypes") AJAXRequest request, RequestPriority priority){
+		if ( scheduler.isWaiting(request) ){
+			request.setPriority(priority);
+			return scheduler.reprioritized(request);
+		}else if ( backing_off.containsKey(request) || persistent_lookups.contains(request) ){
+			request.setPriority(priority);
+			return RequestStatus.QUEUED;
+		}else if ( idle_lane.containsKey(request) ){
+			request.setPriority(priority);
+			if ( priority == RequestPriority.LOW ){
+				return RequestStatus.QUEUED;
+			}//else
+			idle_lane.remove(request);	//It's not background traffic anymore
+			return submitRequest(request) ? RequestStatus.STARTED : RequestStatus.QUEUED;
+		}else if ( scheduler.isStarted(request) ){
+			request.setPriority(priority);
+			return RequestStatus.STARTED;
+		}else{
+			return getLostStatus(request);
+		}
 	}
 	
 	 /**
@@ -296,64 +1230,558 @@ public class AJAXRequestRouter {
 	  * @param request The request to be started
 	  */
 	protected void sendNewRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
+		request.setSubmittedAt(Duration.currentTimeMillis());
+		metrics.onSubmitted();
+		if ( request.getResponseType() == ResponseType.STREAM ){
+			//Its records are handed out as they arrive: there is no single response to share, store or merge
+			retryBudget.deposit();
+			enqueueRequest(request);
+			return ;
+		}//else
+		if ( request.getCacheTTL() > 0 && serveFromCache(request) ){
+			return ;
+		}//else
+		if ( persistentCache != null && request.getPersistentTTL() > 0 && responseCache.getStale(request.getCacheKey()) == null ){
+			lookupPersistentCache(request);
+			return ;
+		}//else
+		routeRequest(request);
+	}
+	
+	/**
+	 * Sends a request which couldn't be served from the caches: unless it's coalesced, it's merged into a batch,
+	 * or put in the idle lane, or started right away, or enqueued
+	 * @param request The request to be sent
+	 */
+	private void routeRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
+		if ( request.isStaleWhileRevalidate() && !request.isRevalidating() && serveStaleResponse(request) ){
+			request.setPriority(RequestPriority.LOW);	//From now on it's just a background refresh
+		}
+		if ( requestCoalescing && coalesceRequest(request) ){
+			return ;
+		}//else
+		retryBudget.deposit();
+		pending_requests.put(request.getCoalescingKey(), request);
+		if ( !batch_rules.isEmpty() && addToBatch(request) ){
+			return ;
+		}//else
+		enqueueRequest(request);
+	}
+	
+	/**
+	 * Starts the request right away, if possible, or else puts it in the waiting_queue of its host; if the idle
+	 * lane is enabled, LOW priority requests are held by it instead
+	 * @param request The request to be started
+	 */
+	private void enqueueRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
+		if ( idleLane && request.getPriority() == RequestPriority.LOW ){
+			idle_lane.put(request, Duration.currentTimeMillis());
+			scheduleIdleCallback();
+			return ;
+		}//else
+		submitRequest(request);
+	}
+	
+	/**
+	 * Starts the request right away, if possible, or else puts it in the waiting_queue of its host
+	 * @param request The request to be started
+	 * @return true <=> the request has been started
+	 */
+	private boolean submitRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
+		HostPool pool = getHostPool(request.getHost());
+		if ( pool.getCircuitBreaker() != null && !pool.getCircuitBreaker().allowRequest(request) ){
+			rejectRequest(request);
+			return false;
+		}//else
+		request.setEnqueuedAt(Duration.currentTimeMillis());
 		
-		if ( queue_started.size() >= maxContemporaryRequests ){
-			//Too many requests started: Check if the request is urgent, and if so verifies if there is room in the urgent requests' waiting_queue
-			if ( request.isUrgent() && queue_urgent.size() < maxContemporaryUrgentRequests ){
-				//Request can be started as urgent
-				queue_urgent.add( request ) ;
-				try{
-					request.getResponse();
-				}catch(Exception e){
-//TODO:	request.notifyFailure? 
-					System.out.println(e.getMessage() + " | " + e.getCause());
-				}			
-			}else{
-				//Request must be hold until some other request is completed
-				waiting_queue.add(request);
+		if ( !scheduler.submit(request) ){
+			//Request must be hold until some other request is completed
+			metrics.onQueueFull();
+			if ( maxWaitingRequests != UNBOUNDED && scheduler.getWaitingRequestsCount() > maxWaitingRequests ){
+				shedRequests(request);
+			}
+			if ( !request.isCompleted() ){
 				request.notifyQueueFull();
-				//waiting_queue automatically handles the priority
+			}
+			//waiting_queue automatically handles the priority
+			return false;
+		}//else
+		return true;
+	}
+	
+	/**
+	 * Sheds waiting requests according to the load shedding policy, because the waiting queue is full
+	 * @param newest The request which has just been added to the waiting queue
+	 */
+	@SuppressWarnings("rawtypes")
+	private void shedRequests(AJAXRequest newest){
+		//A single pass: if the queue was already longer (the limit has just been lowered) it shrinks one request at a time
+		for ( AJAXRequest victim : scheduler.selectVictims(loadSheddingPolicy, newest, Duration.currentTimeMillis()) ){
+			if ( !scheduler.remove(victim) ){
+				continue;
+			}
+			if ( victim instanceof BatchRequest ){
+				for ( AJAXRequest r : ((BatchRequest) victim).getRequests() ){
+					forgetPendingRequest(r);
+				}
+			}else{
+				forgetPendingRequest(victim);
+			}
+			HostPool pool = getHostPool(victim.getHost());
+			if ( pool.getCircuitBreaker() != null ){
+				pool.getCircuitBreaker().release(victim);	//In case it was let through as a probe
+			}
+			metrics.onShed();
+			victim.shed();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param request A request which is neither waiting nor in flight
+	 * @return RequestStatus.SHED if the request has been shed, RequestStatus.LOST otherwise
+	 */
+	private RequestStatus getLostStatus(@SuppressWarnings("rawtypes") AJAXRequest request){
+		return request.getOutcome() == RequestOutcome.SHED ? RequestStatus.SHED : RequestStatus.LOST;
+	}
+	
+	/**
+	 * Makes sure the idle lane will be drained: during the next idle period (or when its oldest request becomes
+	 * overdue), if the browser can tell when the page is idle, or else one request per event loop turn
+	 */
+	private void scheduleIdleCallback(){
+		if ( idleCallbackPending || idle_lane.isEmpty() ){
+			return ;
+		}//else
+		idleCallbackPending = true;
+		//The browser must call back by the time the oldest request becomes overdue, even if the page is still busy
+		double oldest = idle_lane.values().iterator().next();
+		int timeout = (int) Math.max(1, oldest + maxIdleDeferral - Duration.currentTimeMillis());
+		if ( !requestIdleCallback(timeout) ){
+			Scheduler.get().scheduleIncremental(new RepeatingCommand() {
+				@Override
+				public boolean execute() {
+					drainIdleLane(null);
+					return false;	//drainIdleLane schedules the next turn, if needed
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Submits the requests held by the idle lane, oldest first, as long as there is idle time left and they can be
+	 * started right away; requests held for longer than maxIdleDeferral are submitted anyway.
+	 * @param deadline The IdleDeadline of the idle period (null <=> requestIdleCallback isn't available, and so
+	 * 					just one request is submitted)
+	 */
+	@SuppressWarnings("rawtypes")
+	private void drainIdleLane(JavaScriptObject deadline){
+		idleCallbackPending = false;
+		double now = Duration.currentTimeMillis();
+		boolean canStart = true;	//False once a request has had to wait for a slot
+		boolean submitted = false;
+		while ( !idle_lane.isEmpty() ){
+			AJAXRequest request = idle_lane.keySet().iterator().next();
+			boolean overdue = now - idle_lane.get(request) >= maxIdleDeferral;
+			if ( !overdue && (!canStart || (deadline == null ? submitted : timeRemaining(deadline) < MIN_IDLE_TIME)) ){
+				break;
+			}//else
+			idle_lane.remove(request);
+			if ( !submitRequest(request) && scheduler.isWaiting(request) ){
+				canStart = false;
+			}
+			submitted = true;
+		}
+		if ( canStart ){
+			scheduleIdleCallback();	//Out of idle time: the rest waits for the next idle period
+		}//else: the rest waits for a slot to be freed (see notifyCompletion)
+	}
+	
+	/**
+	 * Asks the browser to drain the idle lane during its next idle period
+	 * @param timeout How long (in milliseconds) the browser may wait for an idle period 
+	 * @return false <=> requestIdleCallback isn't available
+	 */
+	private native boolean requestIdleCallback(int timeout) /*-{
+	  if (!$wnd.requestIdleCallback) {
+	    return false;
+	  }
+	  var router = this;
+	  $wnd.requestIdleCallback($entry(function(deadline) {
+	    router.@com.smartgwt.extensions.utility.requestrouter.AJAXRequestRouter::drainIdleLane(Lcom/google/gwt/core/client/JavaScriptObject;)(deadline);
+	  }), { timeout: timeout });
+	  return true;
+	}-*/;
+	
+	/**
+	 * 
+	 * @param deadline An IdleDeadline
+	 * @return How much time (in milliseconds) is left in the idle period (0 if it has been forced by the timeout)
+	 */
+	private static native double timeRemaining(JavaScriptObject deadline) /*-{
+	  return deadline.didTimeout ? 0 : deadline.timeRemaining();
+	}-*/;
+	
+	/**
+	 * Fails a request fast, without sending it
+	 * @param request The request to be failed (if it's a batch, each of its requests fails)
+	 */
+	@SuppressWarnings("rawtypes")
+	private void rejectRequest(AJAXRequest request){
+		if ( request instanceof BatchRequest ){
+			for ( AJAXRequest r : ((BatchRequest) request).getRequests() ){
+				forgetPendingRequest(r);
 			}
 		}else{
-			//Request can be started right now
-			queue_started.add( request ) ;
-			try{
-				request.getResponse();
-			}catch(Exception e){
-				System.out.println(e.getMessage() + " | " + e.getCause());
-//TODO:	request.notifyFailure? 
-			}			
-		}		
-	}
-	
-	/**
-	 * Send the first request in the waiting_queue, if any; it tries to send as many requests 
-	 */
-	private void sendNextRequestInQueue(){
-		while ( queue_started.size() < maxContemporaryRequests && !waiting_queue.isEmpty() ){
-			@SuppressWarnings("rawtypes")
-			AJAXRequest request = waiting_queue.poll();
-			queue_started.add( request ) ;
-			try{
-				request.getResponse();
-			}catch(Exception e){
+			forgetPendingRequest(request);
+		}
+		metrics.onRejected();
+		request.reject();
+	}
+	
+	/**
+	 * Checks if a valid response for the request is cached, and if so delivers it (asynchronously, as if it
+	 * came from the network) without taking any slot
+	 * @param request The new request
+	 * @return true <=> the request has been served from the cache
+	 */
+	private boolean serveFromCache(@SuppressWarnings("rawtypes") final AJAXRequest request){
+		final JavaScriptObject response = responseCache.get(request.getCacheKey());
+		if ( response == null ){
+			return false;
+		}//else
+		Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+			@Override
+			public void execute() {
+				request.handleCachedResponse(response);
+			}
+		});
+		return true;
+	}
+	
+	/**
+	 * Checks if a response for the request has been stored, even an expired one, and if so immediately serves it
+	 * to the request's handler, which will be then only notified of changes
+	 * @param request The new request, in stale-while-revalidate mode
+	 * @return true <=> a stale response has been served
+	 */
+	private boolean serveStaleResponse(@SuppressWarnings("rawtypes") AJAXRequest request){
+		String key = request.getCacheKey();
+		JavaScriptObject response = responseCache.getStale(key);
+		if ( response == null ){
+			return false;
+		}//else
+		request.handleStaleResponse(response, responseCache.getDigest(key));
+		return true;
+	}
+	
+	/**
+	 * Looks the request up in the persistent cache (asynchronously): if a response is found, it's served to the
+	 * handler right away as a stale one, and the request becomes a LOW priority refresh of it.
+	 * Either way, the request is then sent, unless it has been removed or cancelled meanwhile
+	 * @param request The new request, with a positive persistent TTL
+	 */
+	private void lookupPersistentCache(@SuppressWarnings("rawtypes") final AJAXRequest request){
+		persistent_lookups.add(request);
+		persistentCache.get(request.getCacheKey(), new CachedResponseCallback() {
+			@Override
+			public void onLoaded(JavaScriptObject response, ResponseDigest digest) {
+				if ( !persistent_lookups.remove(request) ){
+					return ;	//Removed or cancelled while the storage was read
+				}//else
+				if ( response != null ){
+					//Kept as a stale response, so that it's served only once: later requests get the fresh one
+					responseCache.put(request.getCacheKey(), response, 0, digest);
+					request.handleStaleResponse(response, digest);
+					request.setPriority(RequestPriority.LOW);	//From now on it's just a background refresh
+				}
+				routeRequest(request);
+			}
+		});
+	}
+	
+	/**
+	 * This method gets called by each AJAXRequest which receives a response: if the request allows it,
+	 * the response is cached, in memory and/or in the persistent cache
+	 * @param request The calling request
+	 * @param response The response received
+	 * @return The digest of the response, if it has been stored (null otherwise)
+	 */
+	protected ResponseDigest cacheResponse(@SuppressWarnings("rawtypes") AJAXRequest request, JavaScriptObject response){
+		if ( request.getResponseType() == ResponseType.STREAM ){
+			return null;
+		}//else
+		boolean memory = request.getCacheTTL() > 0 || request.isStaleWhileRevalidate() || request.isRevalidating();
+		boolean persistent = persistentCache != null && request.getPersistentTTL() > 0;
+		if ( !memory && !persistent ){
+			return null;
+		}//else
+		//Computed once, and shared by the caches: the transport may already know the size of the body
+		ResponseDigest digest = request.getResponseLength() >= 0 ? ResponseDigest.of(response, request.getResponseLength())
+				: ResponseDigest.of(response);
+		if ( memory ){
+			responseCache.put(request.getCacheKey(), response, request.getCacheTTL(), digest);
+		}
+		if ( persistent ){
+			//The body the response was parsed from, if the transport has kept it, is stored as it is
+			if ( request.getResponseText() != null ){
+				persistentCache.put(request.getCacheKey(), request.getResponseText(), request.getPersistentTTL());
+				request.setResponseText(null);
+			}else{
+				persistentCache.put(request.getCacheKey(), response, request.getPersistentTTL());
 			}
 		}
-		return;
+		return digest;
 	}
-
+	
+	/**
+	 * Checks if an identical request (same url and response type) is already waiting or in flight, and if so
+	 * attaches the new request's handler to it.
+	 * If the pending request is still waiting and the new one has a higher priority, the pending request is promoted.
+	 * @param request The new request
+	 * @return true <=> the request has been coalesced, and so it must not be sent
+	 */
+	@SuppressWarnings("rawtypes")
+	private boolean coalesceRequest(AJAXRequest request){
+		AJAXRequest pending = pending_requests.get(request.getCoalescingKey());
+		if ( pending == null || pending.isCompleted() ){
+			return false;
+		}//else
+		
+		pending.addCoalescedHandler(request);
+		coalescedRequestsCount++;
+		if ( request.getCacheTTL() > pending.getCacheTTL() ){
+			pending.setCacheTTL(request.getCacheTTL());
+		}
+		
+		if ( !scheduler.isStarted(pending) ){
+			//Still waiting
+			if ( request.getTimeout() > pending.getTimeout() ){
+				pending.setTimeout(request.getTimeout());
+				scheduler.reprioritized(pending);	//Its due time has changed
+			}
+			if ( request.getPriority().compareTo(pending.getPriority()) < 0 ){
+				reprioritize(pending, request.getPriority());
+			}
+			if ( scheduler.isWaiting(pending) ){
+				request.handler.onQueueFull(pending);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks if the request matches any batching rule, and if so adds it to the group of requests with its same
+	 * batch key: the group is sent as soon as it's full, or when its linger time elapses
+	 * @param request The new request
+	 * @return true <=> the request has been added to a batch, and so it must not be sent on its own
+	 */
+	private boolean addToBatch(@SuppressWarnings("rawtypes") AJAXRequest request){
+		for ( BatchRule rule : batch_rules ){
+			String key = rule.getBatchKey(request);
+			if ( key == null ){
+				continue;
+			}//else
+			HashMap<String, PendingBatch> batches = pending_batches.get(rule);
+			PendingBatch batch = batches.get(key);
+			if ( batch == null ){
+				batch = new PendingBatch(rule, key);
+				batches.put(key, batch);
+				batch.linger.schedule(Math.max(1, rule.getMaxLinger()));
+			}
+			batch.requests.add(request);
+			if ( batch.requests.size() >= rule.getMaxBatchSize() ){
+				batch.linger.cancel();
+				flushBatch(batch);
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sends a group of requests waiting to be merged
+	 * @param batch The group of requests
+	 */
+	private void flushBatch(PendingBatch batch){
+		HashMap<String, PendingBatch> batches = pending_batches.get(batch.rule);
+		if ( batches != null && batches.get(batch.key) == batch ){
+			batches.remove(batch.key);
+		}
+		sendBatch(batch);
+	}
+	
+	/**
+	 * Merges a group of requests into a single BatchRequest, and sends it
+	 * @param batch The group of requests
+	 */
+	@SuppressWarnings("rawtypes")
+	private void sendBatch(PendingBatch batch){
+		if ( batch.requests.isEmpty() ){
+			return ;
+		}else if ( batch.requests.size() == 1 ){
+			enqueueRequest(batch.requests.get(0));	//Nothing to merge with
+			return ;
+		}//else
+		BatchRequest request = new BatchRequest(this, batch.rule, new Vector<AJAXRequest>(batch.requests));
+		for ( AJAXRequest r : batch.requests ){
+			r.setBatch(request);
+		}
+		batchedRequestsCount += batch.requests.size() - 1;
+		enqueueRequest(request);
+	}
+	
+	/**
+	 * Removes a request from the group of requests it's waiting to be merged with, if any
+	 * @param request
+	 * @return true <=> the request was waiting to be merged
+	 */
+	private boolean removeFromPendingBatch(@SuppressWarnings("rawtypes") AJAXRequest request){
+		for ( BatchRule rule : batch_rules ){
+			String key = rule.getBatchKey(request);
+			PendingBatch batch = key == null ? null : pending_batches.get(rule).get(key);
+			if ( batch != null && batch.requests.remove(request) ){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * This method gets called by each AJAXRequest which fails, after notifyCompletion: if its retry policy and
+	 * the retry budget allow it, the request is sent again after a backoff, during which it doesn't hold any slot.
+	 * Batches are never retried as a whole: each of their requests is retried on its own instead.
+	 * @param request The failed request
+	 * @return true <=> the request will be sent again, and so its handlers must not be notified of the failure
+	 */
+	protected boolean retryRequest(@SuppressWarnings("rawtypes") final AJAXRequest request){
+		if ( request instanceof BatchRequest || request.getChunks() > 0 ){
+			return false;	//Part of a streamed response has already been delivered: sending it again would duplicate it
+		}//else
+		RetryPolicy policy = request.getRetryPolicy() != null ? request.getRetryPolicy() : defaultRetryPolicy;
+		if ( policy == null || !policy.isRetryable(request) || !retryBudget.withdraw() ){
+			return false;
+		}//else
+		request.resetForRetry();
+		if ( !pending_requests.containsKey(request.getCoalescingKey()) ){
+			pending_requests.put(request.getCoalescingKey(), request);	//Identical requests can still be coalesced into it
+		}
+		Timer backoff = new Timer() {
+			@Override
+			public void run() {
+				if ( backing_off.remove(request) != null ){
+					enqueueRequest(request);
+				}
+			}
+		};
+		backing_off.put(request, backoff);
+		metrics.onRetried();
+		backoff.schedule(policy.getDelay(request.getAttempts()));
+		return true;
+	}
+	
+	/**
+	 * Cancels the retry of a request, if it's waiting for one
+	 * @param request
+	 * @return true <=> the request was waiting to be sent again
+	 */
+	private boolean cancelRetry(@SuppressWarnings("rawtypes") AJAXRequest request){
+		Timer backoff = backing_off.remove(request);
+		if ( backoff == null ){
+			return false;
+		}//else
+		backoff.cancel();
+		return true;
+	}
+	
+	/**
+	 * Removes the request from the index of the pending requests, unless another request has taken its place
+	 * @param request A request which has been completed or removed
+	 */
+	private void forgetPendingRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
+		if ( pending_requests.get(request.getCoalescingKey()) == request ){
+			pending_requests.remove(request.getCoalescingKey());
+		}
+	}
+	
+	/**
+	 * Actually sends a request which has already been given a slot, and sets its deadline
+	 * @param request The request to be started
+	 */
+	@SuppressWarnings("rawtypes")
+	private void startRequest(AJAXRequest request){
+		//Keeps track of the time spent waiting since the request was handed to the router, to detect starvation
+		metrics.onStarted(request.getPriority(), Duration.currentTimeMillis() - request.getSubmittedAt());
+		
+		request.countAttempt();
+		if ( request instanceof BatchRequest ){
+			for ( AJAXRequest r : ((BatchRequest) request).getRequests() ){
+				r.countAttempt();
+			}
+		}
+		if ( request.getTransport() == null ){
+			RequestTransport transport = getHostPool(request.getHost()).getTransport();
+			request.setTransport( transport != null ? transport : defaultTransport );
+		}
+		request.setStartedAt(Duration.currentTimeMillis());
+		deadlines.schedule(request);
+		try{
+			request.getResponse();
+		}catch(Exception e){
+			//The request couldn't even be sent: it fails right away, instead of holding its slot until its deadline
+			request.handleAJAXResponse(null);
+		}
+	}
+	
 	/**
 	 * This method gets called by each AJAXRequest once it's completed (or if fails)
 	 * @param request The calling request
 	 */
 	public void notifyCompletion(@SuppressWarnings("rawtypes") AJAXRequest request){
-		//Checks if the request is urgent and only if so (thanks laziness!) tries to remove it from the urgent waiting_queue
-		if ( !request.isUrgent() || !queue_urgent.remove(request) ){
-			//If the request is not urgent or it has been added to the urgent waiting_queue, then it must be removed
-			//from the standard queue_started
-			queue_started.remove(request);
+		HostPool pool = getHostPool(request.getHost());
+		boolean started = scheduler.release(request);
+		double rtt = Duration.currentTimeMillis() - request.getStartedAt();
+		if ( started ){
+			metrics.onCompleted(request.getPriority(), request.getOutcome(), rtt);
+		}
+		if ( started && concurrencyLimit != null && request.getResponseType() != ResponseType.STREAM ){
+			//The duration of a streamed download depends on its size, not on the load: it would be read as congestion
+			concurrencyLimit.onSample(request.getOutcome(), rtt, 
+										scheduler.getStartedRequestsCount() + scheduler.getUrgentRequestsCount() + 1);
+		}
+		if ( started && pool.getCircuitBreaker() != null && pool.getCircuitBreaker().onSample(request, request.getOutcome()) ){
+			//The host is failing: the requests waiting for it fail fast, instead of taking slots until they expire
+			while ( !pool.waiting_queue.isEmpty() ){
+				@SuppressWarnings("rawtypes")
+				AJAXRequest waiting = pool.waiting_queue.peek();
+				scheduler.remove(waiting);
+				rejectRequest(waiting);
+			}
+		}
+		forgetPendingRequest(request);
+		scheduler.dispatch();
+		scheduleIdleCallback();	//A slot may be free for the requests held by the idle lane
+	}
+	
+	/**
+	 * This method gets called by each streamed AJAXRequest when a chunk of its response is received:
+	 * its deadline is moved forward, so that it only expires if the stream stalls for longer than its timeout
+	 * @param request The calling request
+	 */
+	protected void notifyProgress(@SuppressWarnings("rawtypes") AJAXRequest request){
+		if ( scheduler.isStarted(request) ){
+			deadlines.schedule(request);
 		}
-		sendNextRequestInQueue();
+	}
+	
+	/**
+	 * This method gets called by the DeadlineScheduler when a started request's timeout elapses:
+	 * the request is handled as failed, and so its slot is freed right away
+	 * @param request The expired request
+	 */
+	protected void notifyTimeout(@SuppressWarnings("rawtypes") AJAXRequest request){
+		request.expire();	//Calls notifyCompletion in turn
 	}
 	
 
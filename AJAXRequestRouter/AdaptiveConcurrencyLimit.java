@@ -0,0 +1,141 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.Vector;
+
+/**
+ * An AIMD (additive increase, multiplicative decrease) limit on the number of concurrent requests, driven by the
+ * round-trip times and the timeouts observed by an AJAXRequestRouter.
+ * 
+ * Each request that expires, or whose round-trip time is more than latencyTolerance times the no-load round-trip
+ * time, is taken as a sign of congestion, and the limit is multiplied by backoffRatio; every other successful request
+ * sent while the slots were at least half used raises the limit by 1/limit (that is, by about one per round of
+ * requests). Failures (f.i. HTTP errors) are not taken into account, since they don't tell anything about the load.
+ * The no-load round-trip time is the minimum one observed in the last SAMPLE_WINDOW requests.
+ * 
+ * The limit always stays within [minLimit, maxLimit], and listeners are notified whenever its integer value changes.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class AdaptiveConcurrencyLimit {
+	
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 20;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	public static final double DEFAULT_LATENCY_TOLERANCE = 2.;
+	
+	private static final int SAMPLE_WINDOW = 100;
+	
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final double latencyTolerance;
+	
+	private double limit;
+	
+	private double noLoadRtt = Double.MAX_VALUE;
+	private double windowMinRtt = Double.MAX_VALUE;
+	private int windowSamples = 0;
+	
+	private final Vector<ConcurrencyLimitListener> listeners = new Vector<ConcurrencyLimitListener>();
+	
+	/**
+	 * Creates a limit with the default bounds and parameters
+	 * @param initialLimit The starting value of the limit 
+	 */
+	public AdaptiveConcurrencyLimit(int initialLimit){
+		this(initialLimit, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_BACKOFF_RATIO, DEFAULT_LATENCY_TOLERANCE);
+	}
+	
+	/**
+	 * 
+	 * @param initialLimit The starting value of the limit (it is brought within the bounds)
+	 * @param _minLimit The lowest value of the limit (must be >= 1)
+	 * @param _maxLimit The highest value of the limit (must be >= minLimit)
+	 * @param _backoffRatio The factor the limit is multiplied by on congestion (must be in (0, 1))
+	 * @param _latencyTolerance How many times the no-load round-trip time a request may take before it's taken
+	 * 							as a sign of congestion (must be > 1)
+	 */
+	public AdaptiveConcurrencyLimit(int initialLimit, int _minLimit, int _maxLimit, double _backoffRatio, 
+									double _latencyTolerance) throws IllegalArgumentException{
+		if ( _minLimit < 1 || _maxLimit < _minLimit || _backoffRatio <= 0 || _backoffRatio >= 1 || _latencyTolerance <= 1 ){
+			throw new IllegalArgumentException();
+		}
+		minLimit = _minLimit;
+		maxLimit = _maxLimit;
+		backoffRatio = _backoffRatio;
+		latencyTolerance = _latencyTolerance;
+		limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+	
+	/**
+	 * Updates the limit with the outcome of a request
+	 * @param outcome How the request has ended
+	 * @param rtt The round-trip time of the request (in milliseconds)
+	 * @param inFlight How many requests were in flight when the request was completed (including itself)
+	 */
+	public void onSample(RequestOutcome outcome, double rtt, int inFlight){
+		int oldLimit = getLimit();
+		
+		if ( outcome == RequestOutcome.TIMEOUT ){
+			limit = Math.max(minLimit, limit * backoffRatio);
+		}else if ( outcome == RequestOutcome.SUCCESS ){
+			windowMinRtt = Math.min(windowMinRtt, rtt);
+			if ( ++windowSamples >= SAMPLE_WINDOW ){
+				//Periodically forgets old samples, so that the no-load RTT can follow changes of the network
+				noLoadRtt = windowMinRtt;
+				windowMinRtt = Double.MAX_VALUE;
+				windowSamples = 0;
+			}else{
+				noLoadRtt = Math.min(noLoadRtt, rtt);
+			}
+			
+			if ( rtt > noLoadRtt * latencyTolerance ){
+				limit = Math.max(minLimit, limit * backoffRatio);
+			}else if ( 2 * inFlight >= limit ){
+				limit = Math.min(maxLimit, limit + 1. / limit);
+			}
+		}
+		
+		int newLimit = getLimit();
+		if ( newLimit != oldLimit ){
+			for ( ConcurrencyLimitListener listener : listeners ){
+				listener.onLimitChanged(oldLimit, newLimit);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return The current maximum number of concurrent requests
+	 */
+	public int getLimit() {
+		return (int) limit;
+	}
+	
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+	
+	/**
+	 * 
+	 * @return The no-load round-trip time (in milliseconds) currently estimated
+	 */
+	public double getNoLoadRtt() {
+		return noLoadRtt;
+	}
+
+	public void addListener(ConcurrencyLimitListener listener){
+		if ( !listeners.contains(listener) ){
+			listeners.add(listener);
+		}
+	}
+	
+	public void removeListener(ConcurrencyLimitListener listener){
+		listeners.remove(listener);
+	}
+}
@@ -0,0 +1,131 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.List;
+
+import com.google.gwt.core.client.JavaScriptException;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.smartgwt.extensions.utility.requestrouter.javascriptobject.JsObjectResponseHandler;
+
+/**
+ * The single AJAXRequest serving a batch of requests merged according to a BatchRule.
+ * 
+ * Its response is split by the rule into the responses of the merged requests, which are then completed
+ * one by one (each of them delivering its response to its own handlers).
+ * The batch takes the highest priority and the longest timeout among the merged requests (no timeout at all, if
+ * any of them has none).
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class BatchRequest extends AJAXRequest<JavaScriptObject> {
+
+	/**
+	 * Demultiplexes the batch's response to the merged requests
+	 */
+	private static class Demultiplexer implements JsObjectResponseHandler {
+		
+		private final BatchRule rule;
+		private final List<AJAXRequest> requests;
+		
+		private Demultiplexer(BatchRule _rule, List<AJAXRequest> _requests){
+			rule = _rule;
+			requests = _requests;
+		}
+
+		@Override
+		public void onFailure(AJAXRequest request) {
+			for ( AJAXRequest r : requests ){
+				r.handleAJAXResponse(null);
+			}
+		}
+
+		@Override
+		public void onQueueFull(AJAXRequest request) {
+			for ( AJAXRequest r : requests ){
+				r.notifyQueueFull();
+			}
+		}
+
+		@Override
+		public void onSuccess(JavaScriptObject jso) {
+			for ( int i = 0; i < requests.size(); i++ ){
+				JavaScriptObject item;
+				try{
+					item = rule.getItem(jso, requests.get(i), i);
+				}catch(JavaScriptException | ClassCastException | IndexOutOfBoundsException e){
+					item = null;
+				}
+				requests.get(i).handleAJAXResponse(item);
+			}
+		}
+	}
+	
+	private final List<AJAXRequest> requests;
+	
+	/**
+	 * 
+	 * @param _router The AJAXRequestRouter which handles the batch
+	 * @param rule The rule the requests have been merged by
+	 * @param _requests The merged requests
+	 */
+	public BatchRequest(AJAXRequestRouter _router, BatchRule rule, List<AJAXRequest> _requests) {
+		super(rule.getBatchUrl(_requests), _router, new Demultiplexer(rule, _requests));
+		requests = _requests;
+		
+		//The batch lasts as long as its longest request: if any of them never expires, neither does the batch
+		setPriority(RequestPriority.LOW);
+		short timeout = 1;	//The shortest positive timeout
+		setSubmittedAt(requests.get(0).getSubmittedAt());	//It has been waiting since its oldest request was handed to the router
+		for ( AJAXRequest r : requests ){
+			if ( r.getSubmittedAt() < getSubmittedAt() ){
+				setSubmittedAt(r.getSubmittedAt());
+			}
+			if ( r.getPriority().compareTo(getPriority()) < 0 ){
+				setPriority(r.getPriority());
+			}
+			if ( r.getTimeout() <= 0 ){
+				timeout = 0;
+			}else if ( timeout > 0 && r.getTimeout() > timeout ){
+				timeout = r.getTimeout();
+			}
+		}
+		setTimeout(timeout);
+	}
+	
+	/**
+	 * Each merged request fails on its own, without the batch being sent
+	 */
+	@Override
+	protected void reject() {
+		if ( isCompleted() ){
+			return ;
+		}//else
+		markAsCompleted();
+		for ( AJAXRequest r : requests ){
+			r.reject();
+		}
+	}
+	
+	/**
+	 * Each merged request is shed on its own
+	 */
+	@Override
+	protected void shed() {
+		if ( isCompleted() ){
+			return ;
+		}//else
+		markAsCompleted();
+		for ( AJAXRequest r : requests ){
+			r.shed();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return The requests served by this batch
+	 */
+	public List<AJAXRequest> getRequests(){
+		return requests;
+	}
+}
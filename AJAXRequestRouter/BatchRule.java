@@ -0,0 +1,90 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.List;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * A rule telling an AJAXRequestRouter which requests can be merged into a single JSONP call, and how.
+ * 
+ * Requests for which getBatchKey returns the same (non null) key are held for at most maxLinger milliseconds and
+ * then sent together, with the url built by getBatchUrl; a batch is sent earlier as soon as it reaches maxBatchSize
+ * requests. The single response is then split by getItem into the responses of the original requests, which are
+ * delivered to their own handlers.
+ * 
+ * F.i., a rule for an endpoint "/item?id=" accepting a list of ids ("/items?ids=1,2,3") and returning an array
+ * of items in the same order could return the url without the id as batch key, build the batch url joining the
+ * ids, and return the index-th element of the response array as item.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+@SuppressWarnings("rawtypes")
+public abstract class BatchRule {
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+	
+	public static final int DEFAULT_MAX_LINGER = 20;
+	
+	private final int maxBatchSize;
+	private final int maxLinger;
+	
+	/**
+	 * Creates a rule with the default batch size and linger time
+	 */
+	public BatchRule(){
+		this(DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LINGER);
+	}
+	
+	/**
+	 * 
+	 * @param _maxBatchSize The maximum number of requests merged into a single call (must be >= 2)
+	 * @param _maxLinger The maximum time (in milliseconds) a request can be held waiting for other requests to be merged with (must be >= 0)
+	 */
+	public BatchRule(int _maxBatchSize, int _maxLinger) throws IllegalArgumentException{
+		if ( _maxBatchSize < 2 || _maxLinger < 0 ){
+			throw new IllegalArgumentException();
+		}
+		maxBatchSize = _maxBatchSize;
+		maxLinger = _maxLinger;
+	}
+	
+	/**
+	 * 
+	 * @param request A request submitted to the router
+	 * @return The key shared by the requests which can be merged with this one, or null if the request can't be batched
+	 */
+	public abstract String getBatchKey(AJAXRequest request);
+	
+	/**
+	 * 
+	 * @param requests The requests to be merged (at least 2, all sharing the same batch key)
+	 * @return The url of the single call serving all of the requests (the JSONP callback name will be appended to it)
+	 */
+	public abstract String getBatchUrl(List<AJAXRequest> requests);
+	
+	/**
+	 * 
+	 * @param batchResponse The response of the single call
+	 * @param request One of the merged requests
+	 * @param index The position of the request in the list passed to getBatchUrl
+	 * @return The response for the request, or null if the request failed 
+	 */
+	public abstract JavaScriptObject getItem(JavaScriptObject batchResponse, AJAXRequest request, int index);
+
+	/**
+	 * 
+	 * @return The maximum number of requests merged into a single call
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * 
+	 * @return The maximum time (in milliseconds) a request can be held waiting for other requests to be merged with
+	 */
+	public int getMaxLinger() {
+		return maxLinger;
+	}
+}
@@ -0,0 +1,18 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**Interface to be implemented by classes that will receive the responses read from a PersistentResponseCache
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface CachedResponseCallback {
+	
+	/**
+	 * 
+	 * @param response The cached response, or null if there is no valid response for the key
+	 * @param digest The response's size and fingerprint, computed from the stored text (null if there is no response)
+	 */
+	public abstract void onLoaded(JavaScriptObject response, ResponseDigest digest);
+}
@@ -0,0 +1,283 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.HashSet;
+import java.util.Vector;
+
+import com.google.gwt.core.client.Duration;
+
+/**
+ * A circuit breaker for the requests to a single host, which stops a host that is down from taking the router's
+ * slots (and holding them until the requests expire).
+ * 
+ * While CLOSED, the breaker tracks the outcomes of the last windowSize requests sent to the host: once at least
+ * minSamples of them are known, if the rate of failed requests (timeouts included) reaches failureRateThreshold, or
+ * the rate of expired ones reaches timeoutRateThreshold, the breaker trips and becomes OPEN.
+ * While OPEN, requests fail fast (their handlers' onFailure is called without any network call) for openDuration
+ * milliseconds; then the breaker becomes HALF_OPEN, and lets through up to maxProbes requests, failing fast
+ * the others: if all the probes succeed the breaker is CLOSED again, while as soon as one fails it's OPEN again.
+ * 
+ * Listeners are notified of every change of state.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class CircuitBreaker {
+
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	public static final int DEFAULT_MIN_SAMPLES = 10;
+	public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+	public static final double DEFAULT_TIMEOUT_RATE_THRESHOLD = 0.3;	//Timeouts hold a slot for long: they trip the breaker earlier 
+	public static final int DEFAULT_OPEN_DURATION = 30000;
+	public static final int DEFAULT_MAX_PROBES = 1;
+	
+	private final int windowSize;
+	private final int minSamples;
+	private final double failureRateThreshold;
+	private final double timeoutRateThreshold;
+	private final int openDuration;
+	private final int maxProbes;
+	
+	private String host = null;
+	
+	private CircuitState state = CircuitState.CLOSED;
+	
+	/**
+	 * Sliding window of the last outcomes, as a ring buffer
+	 */
+	private final RequestOutcome[] window;
+	private int next = 0;
+	private int samples = 0;
+	private int failures = 0;	//Timeouts included
+	private int timeouts = 0;
+	
+	private double openedAt = 0;
+	
+	@SuppressWarnings("rawtypes")
+	private final HashSet<AJAXRequest> probes = new HashSet<AJAXRequest>();
+	private int probeSuccesses = 0;
+	
+	private final Vector<CircuitBreakerListener> listeners = new Vector<CircuitBreakerListener>();
+	
+	/**
+	 * Creates a breaker with the default parameters
+	 */
+	public CircuitBreaker(){
+		this(DEFAULT_WINDOW_SIZE, DEFAULT_MIN_SAMPLES, DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_TIMEOUT_RATE_THRESHOLD,
+				DEFAULT_OPEN_DURATION, DEFAULT_MAX_PROBES);
+	}
+	
+	/**
+	 * 
+	 * @param _windowSize How many of the last outcomes are tracked (must be >= 1)
+	 * @param _minSamples How many outcomes must be known before the breaker can trip (must be in [1, windowSize])
+	 * @param _failureRateThreshold The rate of failed requests, timeouts included, which trips the breaker (must be in (0, 1])
+	 * @param _timeoutRateThreshold The rate of expired requests which trips the breaker (must be in (0, 1])
+	 * @param _openDuration How long (in milliseconds) the breaker stays OPEN before letting probes through (must be >= 0)
+	 * @param _maxProbes How many requests are let through while HALF_OPEN, all of which must succeed to close the breaker (must be >= 1)
+	 */
+	public CircuitBreaker(int _windowSize, int _minSamples, double _failureRateThreshold, double _timeoutRateThreshold,
+							int _openDuration, int _maxProbes) throws IllegalArgumentException{
+		if ( _windowSize < 1 || _minSamples < 1 || _minSamples > _windowSize || _failureRateThreshold <= 0 || _failureRateThreshold > 1
+				|| _timeoutRateThreshold <= 0 || _timeoutRateThreshold > 1 || _openDuration < 0 || _maxProbes < 1 ){
+			throw new IllegalArgumentException();
+		}
+		windowSize = _windowSize;
+		minSamples = _minSamples;
+		failureRateThreshold = _failureRateThreshold;
+		timeoutRateThreshold = _timeoutRateThreshold;
+		openDuration = _openDuration;
+		maxProbes = _maxProbes;
+		window = new RequestOutcome[_windowSize];
+	}
+	
+	/**
+	 * Creates a CLOSED breaker with the same parameters and listeners as another one
+	 * @param prototype The breaker to be copied
+	 */
+	public CircuitBreaker(CircuitBreaker prototype){
+		this(prototype.windowSize, prototype.minSamples, prototype.failureRateThreshold, prototype.timeoutRateThreshold,
+				prototype.openDuration, prototype.maxProbes);
+		listeners.addAll(prototype.listeners);
+	}
+	
+	/**
+	 * Called before a request to the host is sent
+	 * @param request The request to be sent
+	 * @return true <=> the request can be sent; false <=> it must fail fast
+	 */
+	public boolean allowRequest(@SuppressWarnings("rawtypes") AJAXRequest request){
+		if ( state == CircuitState.OPEN && Duration.currentTimeMillis() - openedAt >= openDuration ){
+			probes.clear();
+			probeSuccesses = 0;
+			setState(CircuitState.HALF_OPEN);
+		}
+		switch (state){
+			case CLOSED:
+				return true;
+			case HALF_OPEN:
+				if ( probes.size() + probeSuccesses < maxProbes ){
+					probes.add(request);
+					return true;
+				}//else
+				return false;
+			default:
+				return false;
+		}
+	}
+	
+	/**
+	 * Called when a request to the host that has been allowed by the breaker won't be sent anymore (f.i. because
+	 * it has been removed), so that it doesn't count as a pending probe
+	 * @param request
+	 */
+	public void release(@SuppressWarnings("rawtypes") AJAXRequest request){
+		probes.remove(request);
+	}
+	
+	/**
+	 * Updates the breaker with the outcome of a request sent to the host
+	 * @param request The completed request
+	 * @param outcome How the request has ended
+	 * @return true <=> the breaker has tripped, becoming OPEN
+	 */
+	public boolean onSample(@SuppressWarnings("rawtypes") AJAXRequest request, RequestOutcome outcome){
+		switch (state){
+			case CLOSED:
+				record(outcome);
+				if ( samples >= minSamples && (failures >= failureRateThreshold * samples || timeouts >= timeoutRateThreshold * samples) ){
+					trip();
+					return true;
+				}//else
+				return false;
+			case HALF_OPEN:
+				if ( !probes.remove(request) ){
+					return false;	//Sent before the breaker tripped: it doesn't tell anything about the host's recovery
+				}//else
+				if ( outcome != RequestOutcome.SUCCESS ){
+					trip();
+					return true;
+				}//else
+				if ( ++probeSuccesses >= maxProbes ){
+					clearWindow();
+					setState(CircuitState.CLOSED);
+				}
+				return false;
+			default:
+				return false;
+		}
+	}
+	
+	/**
+	 * Adds an outcome to the sliding window, dropping the oldest one if the window is full
+	 */
+	private void record(RequestOutcome outcome){
+		if ( samples == windowSize ){
+			count(window[next], -1);
+		}else{
+			samples++;
+		}
+		window[next] = outcome;
+		count(outcome, 1);
+		next = (next + 1) % windowSize;
+	}
+	
+	private void count(RequestOutcome outcome, int delta){
+		if ( outcome == RequestOutcome.TIMEOUT ){
+			timeouts += delta;
+			failures += delta;
+		}else if ( outcome == RequestOutcome.FAILURE ){
+			failures += delta;
+		}
+	}
+	
+	private void clearWindow(){
+		next = 0;
+		samples = 0;
+		failures = 0;
+		timeouts = 0;
+	}
+	
+	private void trip(){
+		openedAt = Duration.currentTimeMillis();
+		probes.clear();
+		setState(CircuitState.OPEN);
+	}
+	
+	private void setState(CircuitState newState){
+		CircuitState oldState = state;
+		state = newState;
+		for ( CircuitBreakerListener listener : new Vector<CircuitBreakerListener>(listeners) ){
+			listener.onStateChanged(this, oldState, newState);
+		}
+	}
+
+	/**
+	 * 
+	 * @return The current state of the breaker (an OPEN breaker only becomes HALF_OPEN when a new request is submitted)
+	 */
+	public CircuitState getState() {
+		return state;
+	}
+	
+	/**
+	 * 
+	 * @return The origin of the host guarded by this breaker (null if it's not guarding any host)
+	 */
+	public String getHost() {
+		return host;
+	}
+	
+	protected void setHost(String _host) {
+		host = _host;
+	}
+	
+	/**
+	 * 
+	 * @return The rate of failed requests, timeouts included, in the sliding window
+	 */
+	public double getFailureRate() {
+		return samples == 0 ? 0 : failures / (double) samples;
+	}
+	
+	/**
+	 * 
+	 * @return The rate of expired requests in the sliding window
+	 */
+	public double getTimeoutRate() {
+		return samples == 0 ? 0 : timeouts / (double) samples;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public double getTimeoutRateThreshold() {
+		return timeoutRateThreshold;
+	}
+
+	public int getOpenDuration() {
+		return openDuration;
+	}
+
+	public int getMaxProbes() {
+		return maxProbes;
+	}
+	
+	public void addListener(CircuitBreakerListener listener){
+		if ( !listeners.contains(listener) ){
+			listeners.add(listener);
+		}
+	}
+	
+	public void removeListener(CircuitBreakerListener listener){
+		listeners.remove(listener);
+	}
+}
@@ -0,0 +1,10 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**Interface to be implemented by classes which want to be notified when a CircuitBreaker changes its state
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface CircuitBreakerListener {
+	public  void onStateChanged( CircuitBreaker breaker, CircuitState oldState, CircuitState newState );
+}
@@ -0,0 +1,14 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * The states of a CircuitBreaker:
+ * CLOSED		<=> requests are sent normally, and their outcomes are tracked;
+ * OPEN			<=> too many requests have failed recently: requests fail fast, without being sent;
+ * HALF_OPEN	<=> a few probe requests are sent, to tell whether the host has recovered
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public enum CircuitState {
+	CLOSED, OPEN, HALF_OPEN
+}
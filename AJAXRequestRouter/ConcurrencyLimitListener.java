@@ -0,0 +1,11 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**Interface to be implemented by classes which want to be notified when an AdaptiveConcurrencyLimit changes
+ * the maximum number of concurrent requests
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface ConcurrencyLimitListener {
+	public  void onLimitChanged( int oldLimit, int newLimit );
+}
@@ -0,0 +1,137 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.user.client.Timer;
+
+/**
+ * Keeps track of the deadlines of all the requests started by an AJAXRequestRouter, using a single shared
+ * browser timer instead of one timer per request.
+ *
+ * Deadlines are kept in a min-heap, and the timer is always armed for the earliest one: when it elapses, every
+ * request whose deadline has passed is expired (so that its slot is freed right away) and the timer is re-armed
+ * for the next deadline, if any.
+ * Completed requests are not removed from the heap when they complete: their entries are simply discarded
+ * when they reach the head of the heap (lazy deletion), which keeps completion O(1).
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class DeadlineScheduler {
+
+	/**
+	 * An entry of the heap: since a request may be scheduled more than once, each entry remembers
+	 * the deadline it was created for, so that outdated entries can be recognized and discarded
+	 */
+	private static class Deadline {
+		@SuppressWarnings("rawtypes")
+		private final AJAXRequest request;
+		private final double at;
+
+		@SuppressWarnings("rawtypes")
+		private Deadline(AJAXRequest _request, double _at){
+			request = _request;
+			at = _at;
+		}
+
+		/**
+		 *
+		 * @return true <=> the request has been completed or rescheduled since this entry was created
+		 */
+		private boolean isStale(){
+			return request.isCompleted() || request.getDeadline() != at;
+		}
+	}
+
+	private static final Comparator<Deadline> EARLIEST_FIRST = new Comparator<Deadline>() {
+		@Override
+		public int compare(Deadline d1, Deadline d2) {
+			return Double.compare(d1.at, d2.at);
+		}
+	};
+
+	private final PriorityQueue<Deadline> deadlines = new PriorityQueue<Deadline>(11, EARLIEST_FIRST);
+
+	private final AJAXRequestRouter router;
+
+	/**
+	 * The deadline the timer is currently armed for (Double.MAX_VALUE <=> the timer isn't running)
+	 */
+	private double armedFor = Double.MAX_VALUE;
+
+	private final Timer timer = new Timer() {
+		@Override
+		public void run() {
+			expireRequests();
+		}
+	};
+
+	/**
+	 *
+	 * @param _router The router which will be notified when a request expires
+	 */
+	public DeadlineScheduler(AJAXRequestRouter _router){
+		router = _router;
+	}
+
+	/**
+	 * Sets the deadline of a request that has just been started, according to its timeout.
+	 * Requests with a non positive timeout never expire.
+	 * @param request The request just started
+	 */
+	public void schedule(@SuppressWarnings("rawtypes") AJAXRequest request){
+		if ( request.getTimeout() <= 0 ){
+			request.setDeadline(Double.MAX_VALUE);
+			return ;
+		}//else
+
+		double deadline = Duration.currentTimeMillis() + request.getTimeout() * 1000.;
+		request.setDeadline(deadline);
+		deadlines.add(new Deadline(request, deadline));
+		if ( deadline < armedFor ){
+			arm(deadline);
+		}
+	}
+
+	/**
+	 *
+	 * @return The number of deadlines (possibly including outdated ones) still tracked
+	 */
+	public int size(){
+		return deadlines.size();
+	}
+
+	/**
+	 * Expires all the requests whose deadline has passed, and then re-arms the timer for the earliest
+	 * deadline still pending
+	 */
+	private void expireRequests(){
+		armedFor = Double.MAX_VALUE;
+		double now = Duration.currentTimeMillis();
+
+		while ( !deadlines.isEmpty() ){
+			Deadline head = deadlines.peek();
+			if ( head.isStale() ){
+				deadlines.poll();
+			}else if ( head.at <= now ){
+				deadlines.poll();
+				router.notifyTimeout(head.request);
+			}else{
+				arm(head.at);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * (Re)schedules the shared timer so that it elapses at the given deadline
+	 * @param deadline The absolute time (in milliseconds) when the timer should elapse
+	 */
+	private void arm(double deadline){
+		armedFor = deadline;
+		//Timer.schedule cancels the previous schedule, if any
+		timer.schedule( Math.max(1, (int) Math.ceil(deadline - Duration.currentTimeMillis())) );
+	}
+}
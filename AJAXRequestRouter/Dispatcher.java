@@ -0,0 +1,11 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**Interface to be implemented by the transport side of a RequestScheduler, which actually sends the requests
+ * once they have been given a slot
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface Dispatcher<R extends Schedulable> {
+	public  void start( R request );
+}
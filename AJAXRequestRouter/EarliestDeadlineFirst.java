@@ -0,0 +1,22 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * The earliest-deadline-first scheduling policy: the waiting request which is due first (that is, whose submission
+ * time plus timeout comes first) gets the next free slot, whatever its priority; priority only breaks ties.
+ * 
+ * It minimizes the number of requests that expire while waiting, as long as the load can be served at all; under
+ * overload, though, it may let every request come close to expiring. Urgent requests still have their own slots.
+ * 
+ * NOTE: This class is part of the scheduling core, which must not depend on GWT.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class EarliestDeadlineFirst extends SchedulingPolicy {
+
+	@Override
+	public int compare(Schedulable r1, Schedulable r2) {
+		int c = Double.compare(r1.getDueAt(), r2.getDueAt());
+		return c != 0 ? c : IndexedRequestQueue.PRIORITY_ORDER.compare(r1, r2);
+	}
+}
@@ -0,0 +1,75 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.Comparator;
+
+/**
+ * The slot pool of a single origin (scheme + host + port) served by an AJAXRequestRouter.
+ *
+ * Besides the waiting queue and the limits of a SlotPool, each host can have its own transport and its own
+ * circuit breaker.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class HostPool extends SlotPool<AJAXRequest> {
+
+	private RequestTransport transport = null;	//null <=> the router's default transport is used
+	
+	private CircuitBreaker circuitBreaker = null;	//null <=> requests to this host are never failed fast
+
+	/**
+	 *
+	 * @param _host The origin served by this pool (see getOrigin)
+	 * @param ordering The ordering of the pool's waiting_queue
+	 */
+	protected HostPool(String _host, Comparator<? super AJAXRequest> ordering){
+		super(_host, ordering);
+	}
+
+	/**
+	 * Extracts the origin (lower-cased scheme, host and port) of an url, which identifies its HostPool.
+	 * Relative urls all belong to the same pool, identified by the empty string.
+	 * @param url
+	 * @return The origin of the url
+	 */
+	public static String getOrigin(String url){
+		String u = url.trim();
+		int schemeEnd = u.indexOf("://");
+		if ( schemeEnd <= 0 ){
+			return "";
+		}//else
+		int authorityEnd = schemeEnd + 3;
+		while ( authorityEnd < u.length() && "/?#".indexOf(u.charAt(authorityEnd)) < 0 ){
+			authorityEnd++;
+		}
+		return u.substring(0, authorityEnd).toLowerCase();
+	}
+
+	/**
+	 *
+	 * @return The transport used for requests to this host which don't set their own (null <=> the router's default one)
+	 */
+	public RequestTransport getTransport() {
+		return transport;
+	}
+
+	protected void setTransport(RequestTransport _transport) {
+		transport = _transport;
+	}
+
+	/**
+	 *
+	 * @return The circuit breaker guarding this host (null if there is none)
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	protected void setCircuitBreaker(CircuitBreaker _circuitBreaker) {
+		if ( _circuitBreaker != null ){
+			_circuitBreaker.setHost(getHost());
+		}
+		circuitBreaker = _circuitBreaker;
+	}
+}
@@ -0,0 +1,235 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * A priority queue of requests implemented as a binary heap indexed by request ID.
+ *
+ * Besides the usual O(log n) insertion and extraction of the head, the index allows O(1) membership tests,
+ * O(log n) removal of any request and O(log n) update of the position of a request whose priority has changed
+ * (both decrease-key and increase-key), which java.util.PriorityQueue can only do with a linear scan.
+ *
+ * Requests are ordered according to the comparator passed to the constructor, if any, or else by priority
+ * and then by ID (see PRIORITY_ORDER), just like AJAXRequest.compareTo does.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class IndexedRequestQueue<R extends Schedulable> {
+
+	/**
+	 * The default ordering: first matters priority, then (if it's the same) the request ID
+	 */
+	public static final Comparator<Schedulable> PRIORITY_ORDER = new Comparator<Schedulable>() {
+		@Override
+		public int compare(Schedulable r1, Schedulable r2) {
+			if ( r1.getPriority() == r2.getPriority() ){
+				return r1.getID() - r2.getID();
+			}//else
+			return r1.getPriority().compareTo(r2.getPriority());
+		}
+	};
+
+	private final ArrayList<R> heap = new ArrayList<R>();
+
+	/**
+	 * Position in the heap of each request, by request ID
+	 */
+	private final HashMap<Integer, Integer> positions = new HashMap<Integer, Integer>();
+
+	private final Comparator<? super R> comparator;
+
+	/**
+	 * Creates a queue ordered by priority, then by ID
+	 */
+	public IndexedRequestQueue(){
+		this(null);
+	}
+
+	/**
+	 *
+	 * @param _comparator The ordering of the queue (null <=> PRIORITY_ORDER)
+	 */
+	public IndexedRequestQueue(Comparator<? super R> _comparator){
+		comparator = _comparator != null ? _comparator : PRIORITY_ORDER;
+	}
+
+	/**
+	 * Adds a request to the queue
+	 * @param request The request to be added
+	 * @return false <=> the request was already in the queue
+	 */
+	public boolean add(R request){
+		if ( contains(request) ){
+			return false;
+		}//else
+		heap.add(request);
+		positions.put(request.getID(), heap.size() - 1);
+		siftUp(heap.size() - 1);
+		return true;
+	}
+
+	/**
+	 *
+	 * @return The head of the queue (null if the queue is empty), without removing it
+	 */
+	public R peek(){
+		return heap.isEmpty() ? null : heap.get(0);
+	}
+
+	/**
+	 * Removes and returns the head of the queue
+	 * @return The head of the queue, or null if the queue is empty
+	 */
+	public R poll(){
+		if ( heap.isEmpty() ){
+			return null;
+		}//else
+		R head = heap.get(0);
+		removeAt(0);
+		return head;
+	}
+
+	/**
+	 * Removes a request from the queue, wherever it is
+	 * @param request The request to be removed
+	 * @return true <=> the request was in the queue
+	 */
+	public boolean remove(R request){
+		Integer position = positions.get(request.getID());
+		if ( position == null || heap.get(position) != request ){
+			return false;
+		}//else
+		removeAt(position);
+		return true;
+	}
+
+	/**
+	 * Restores the heap order after the priority of a request in the queue has changed
+	 * @param request The request whose priority has changed
+	 * @return true <=> the request is in the queue
+	 */
+	public boolean update(R request){
+		Integer position = positions.get(request.getID());
+		if ( position == null || heap.get(position) != request ){
+			return false;
+		}//else
+		siftDown(siftUp(position));
+		return true;
+	}
+
+	/**
+	 *
+	 * @param request
+	 * @return true <=> the request is in the queue
+	 */
+	public boolean contains(R request){
+		Integer position = positions.get(request.getID());
+		return position != null && heap.get(position) == request;
+	}
+
+	public int size(){
+		return heap.size();
+	}
+
+	public boolean isEmpty(){
+		return heap.isEmpty();
+	}
+
+	/**
+	 * Rebuilds the heap in O(n) time: it must be called when the ordering itself changes
+	 */
+	public void reorder(){
+		for ( int i = (heap.size() >>> 1) - 1; i >= 0; i-- ){
+			siftDown(i);
+		}
+	}
+
+	/**
+	 *
+	 * @return A snapshot of the requests in the queue, in no particular order
+	 */
+	public ArrayList<R> toList(){
+		return new ArrayList<R>(heap);
+	}
+
+	/**
+	 * Removes every request from the queue
+	 */
+	public void clear(){
+		heap.clear();
+		positions.clear();
+	}
+
+	/**
+	 * Removes the element at the given position, replacing it with the last one of the heap
+	 * @param position
+	 */
+	private void removeAt(int position){
+		R removed = heap.get(position);
+		positions.remove(removed.getID());
+		R last = heap.remove(heap.size() - 1);
+		if ( position < heap.size() ){
+			set(position, last);
+			siftDown(siftUp(position));
+		}
+	}
+
+	/**
+	 * Moves the element at the given position up, while it precedes its parent
+	 * @param position
+	 * @return The final position of the element
+	 */
+	private int siftUp(int position){
+		R request = heap.get(position);
+		while ( position > 0 ){
+			int parent = (position - 1) >>> 1;
+			if ( precedes(heap.get(parent), request) ){
+				break;
+			}//else
+			set(position, heap.get(parent));
+			position = parent;
+		}
+		set(position, request);
+		return position;
+	}
+
+	/**
+	 * Moves the element at the given position down, while one of its children precedes it
+	 * @param position
+	 * @return The final position of the element
+	 */
+	private int siftDown(int position){
+		R request = heap.get(position);
+		int half = heap.size() >>> 1;
+		while ( position < half ){
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if ( right < heap.size() && precedes(heap.get(right), heap.get(child)) ){
+				child = right;
+			}
+			if ( !precedes(heap.get(child), request) ){
+				break;
+			}//else
+			set(position, heap.get(child));
+			position = child;
+		}
+		set(position, request);
+		return position;
+	}
+
+	/**
+	 *
+	 * @return true <=> r1 must be served before r2
+	 */
+	private boolean precedes(R r1, R r2){
+		return comparator.compare(r1, r2) < 0;
+	}
+
+	private void set(int position, R request){
+		heap.set(position, request);
+		positions.put(request.getID(), position);
+	}
+}
@@ -0,0 +1,168 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * The JSONP transport: the request's url, with the name of a callback function appended, is loaded through a
+ * script element, and the script calls the function with the response's data.
+ * It allows cross-site requests to any server supporting JSONP, but it can't tell HTTP errors apart (a request
+ * fails as soon as its script can't be loaded, or is loaded without calling the callback) and it can't really
+ * stop the download of an aborted request.
+ *
+ * Each request's callback is an entry point on a single global object, the dispatcher (DISPATCHER + ".r" + ID),
+ * so the request is identified by the callback name itself: responses are delivered correctly even if the
+ * server's script calls the callback asynchronously (f.i. from a timeout or a nested script), where
+ * document.currentScript would no longer identify it. The entry point finds the pending request through a
+ * table indexed by request ID: the entry point, the script element and the table entry are removed as soon
+ * as the response (or the error) arrives, so no other globals and no script nodes are left behind.
+ * The constraint is that the server must call the callback exactly as named in the url (the name contains a
+ * dot, so servers which only accept plain identifiers as callback names are not supported); a response
+ * arriving later than LOAD_GRACE_MILLIS after its script has been run fails the request (and is then dropped).
+ *
+ * This is the default transport of AJAXRequestRouter.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class JsonpTransport implements RequestTransport {
+
+	/**
+	 * The name of the global object holding the requests' callbacks
+	 */
+	public static final String DISPATCHER = "__requestRouterJsonp";
+
+	/**
+	 * How long (in milliseconds) a request waits for its callback once its script has been run, before failing:
+	 * scripts may call the callback asynchronously
+	 */
+	public static final int LOAD_GRACE_MILLIS = 1000;
+
+	private static JsonpTransport transport = null;
+
+	/**
+	 *
+	 * @return A reference to the shared JsonpTransport object
+	 */
+	public static JsonpTransport get(){
+		if (transport == null){
+			transport = new JsonpTransport();
+		}
+		return transport;
+	}
+
+	protected JsonpTransport(){
+		install();
+	}
+
+	@Override
+	public void send(@SuppressWarnings("rawtypes") AJAXRequest request) {
+		send(request.getID(), request.getUrl(), request);
+	}
+
+	@Override
+	public void abort(@SuppressWarnings("rawtypes") AJAXRequest request) {
+		abort(request.getID(), request.getTransportHandle());
+		request.setTransportHandle(null);
+	}
+
+	/**
+	 * Defines the dispatcher on the host page's window ($wnd), unless it's already there.
+	 * The dispatcher holds the table of pending requests (table), the function completing them (finish) and
+	 * an entry point for each pending request
+	 */
+	private static native void install() /*-{
+	 if ($wnd[@com.smartgwt.extensions.utility.requestrouter.JsonpTransport::DISPATCHER]) {
+	   return;
+	 }
+	 var table = {};
+
+	 // Cleanup and delivery: the first call for a request wins, later ones (or ones for aborted requests) are dropped
+	 var finish = function(requestID, jsonObj) {
+	   var request = table[requestID];
+	   if (!request) {
+	     return;
+	   }
+	   delete table[requestID];
+	   delete dispatcher["r" + requestID];
+	   var script = request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::getTransportHandle()();
+	   if (script != null) {
+	     script.onload = script.onerror = null;
+	     if (script.parentNode != null) {
+	       script.parentNode.removeChild(script);
+	     }
+	   }
+	   request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setTransportHandle(Lcom/google/gwt/core/client/JavaScriptObject;)(null);
+	   request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::handleAJAXResponse(Lcom/google/gwt/core/client/JavaScriptObject;)(jsonObj);
+	 };
+
+	 var dispatcher = {};
+	 dispatcher.table = table;
+	 dispatcher.finish = finish;
+	 $wnd[@com.smartgwt.extensions.utility.requestrouter.JsonpTransport::DISPATCHER] = dispatcher;
+	}-*/;
+
+	/**
+	 * Make call to remote server.
+	 *
+	 * @param requestID
+	 * @param url
+	 * @param request
+	 */
+	private native void send(int requestID, String url, @SuppressWarnings("rawtypes") AJAXRequest request) /*-{
+	 var name = @com.smartgwt.extensions.utility.requestrouter.JsonpTransport::DISPATCHER;
+	 var dispatcher = $wnd[name];
+	 var finish = dispatcher.finish;
+	 var callback = name + ".r" + requestID;
+	 dispatcher["r" + requestID] = function(jsonObj) {
+	   finish(requestID, jsonObj);
+	 };
+
+	 // [1] Create a script element, and register the request in the table
+	 var script = $doc.createElement("script");
+	 script.setAttribute("src", url + callback);
+	 script.setAttribute("type", "text/javascript");
+	 request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setTransportHandle(Lcom/google/gwt/core/client/JavaScriptObject;)(script);
+	 dispatcher.table[requestID] = request;
+
+	 // [2] Fail fast if the script can't be loaded, or if it has been run without calling its callback within the grace period
+	 script.onerror = function() {
+	   finish(requestID, null);
+	 };
+	 script.onload = function() {
+	   script.onload = null;
+	   $wnd.setTimeout(function() {
+	     // Unless the request has been completed, aborted, or sent again in the meantime
+	     if (dispatcher.table[requestID] === request
+	         && request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::getTransportHandle()() === script) {
+	       finish(requestID, null);
+	     }
+	   }, @com.smartgwt.extensions.utility.requestrouter.JsonpTransport::LOAD_GRACE_MILLIS);
+	 };
+
+	 // [3] Attach the script element to the document body.
+	 $doc.body.appendChild(script);
+	}-*/;
+
+	/**
+	 * Detaches the script element and removes the request from the table, so that a late response is silently dropped
+	 * @param requestID
+	 * @param script The script element of the request, if it is still pending
+	 */
+	private native void abort(int requestID, JavaScriptObject script) /*-{
+	 var dispatcher = $wnd[@com.smartgwt.extensions.utility.requestrouter.JsonpTransport::DISPATCHER];
+	 if (script != null) {
+	   script.onload = script.onerror = null;
+	   if (script.parentNode != null) {
+	     script.parentNode.removeChild(script);
+	   }
+	 }
+	 delete dispatcher.table[requestID];
+	 var entry = "r" + requestID;
+	 if (dispatcher[entry]) {
+	   // A detached script may still run: its entry point is kept until then, as a no-op
+	   dispatcher[entry] = function() {
+	     delete dispatcher[entry];
+	   };
+	 }
+	}-*/;
+}
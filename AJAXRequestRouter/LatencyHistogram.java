@@ -0,0 +1,144 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.json.client.JSONNumber;
+import com.google.gwt.json.client.JSONObject;
+
+/**
+ * A histogram of durations (in milliseconds) with fixed, log-linear buckets, in the style of HdrHistogram:
+ * durations below SUB_BUCKETS milliseconds have a bucket each, and every further power of two is split into
+ * SUB_BUCKETS buckets of equal width, so that any duration is known with a relative error below 1/SUB_BUCKETS.
+ * 
+ * Recording a value takes constant time and never allocates memory, so the histogram can be updated on
+ * every request; count, mean and maximum are exact, while percentiles are estimated from the buckets.
+ * Durations longer than about 35 minutes all fall into the last bucket.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 20;
+	private static final int BUCKETS = SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+	
+	private final int[] counts = new int[BUCKETS];
+	private int count = 0;
+	private double total = 0;
+	private double max = 0;
+	
+	/**
+	 * Adds a duration to the histogram
+	 * @param millis The duration (in milliseconds; negative values are taken as 0)
+	 */
+	public void record(double millis){
+		double value = Math.max(0, millis);
+		counts[bucketOf(value)]++;
+		count++;
+		total += value;
+		max = Math.max(max, value);
+	}
+	
+	/**
+	 * 
+	 * @param value A non negative duration
+	 * @return The index of the bucket the duration falls into
+	 */
+	private static int bucketOf(double value){
+		int v = value >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) value;
+		if ( v < SUB_BUCKETS ){
+			return v;
+		}//else
+		int exponent = 31 - Integer.numberOfLeadingZeros(v);	//floor(log2(v)) >= SUB_BUCKET_BITS
+		if ( exponent > MAX_EXPONENT ){
+			return BUCKETS - 1;
+		}//else
+		int subBucket = (v >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+	}
+	
+	/**
+	 * 
+	 * @param bucket The index of a bucket
+	 * @return The smallest duration which falls into the bucket after the given one
+	 */
+	private static double upperBoundOf(int bucket){
+		if ( bucket < SUB_BUCKETS ){
+			return bucket + 1;
+		}//else
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = bucket % SUB_BUCKETS;
+		return (double) (SUB_BUCKETS + subBucket + 1) * (1 << (exponent - SUB_BUCKET_BITS));
+	}
+	
+	/**
+	 * 
+	 * @param percentile The percentile to be estimated (in [0, 100])
+	 * @return An estimate (by excess, never above the maximum) of the duration below which the given percentage of the values falls
+	 */
+	public double getPercentile(double percentile){
+		if ( count == 0 ){
+			return 0;
+		}//else
+		double threshold = Math.max(1, Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.));
+		int seen = 0;
+		for ( int i = 0; i < BUCKETS; i++ ){
+			seen += counts[i];
+			if ( seen >= threshold ){
+				return Math.min(max, upperBoundOf(i));
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * 
+	 * @return How many durations have been recorded
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * 
+	 * @return The longest duration recorded
+	 */
+	public double getMax() {
+		return max;
+	}
+	
+	/**
+	 * 
+	 * @return The average of the durations recorded
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : total / count;
+	}
+	
+	/**
+	 * Forgets every duration recorded
+	 */
+	public void reset(){
+		for ( int i = 0; i < BUCKETS; i++ ){
+			counts[i] = 0;
+		}
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+	
+	/**
+	 * 
+	 * @return A summary of the histogram: count, mean, max and the 50th, 90th, 99th percentiles
+	 */
+	public JSONObject toJSON(){
+		JSONObject json = new JSONObject();
+		json.put("count", new JSONNumber(count));
+		json.put("mean", new JSONNumber(getMean()));
+		json.put("max", new JSONNumber(max));
+		json.put("p50", new JSONNumber(getPercentile(50)));
+		json.put("p90", new JSONNumber(getPercentile(90)));
+		json.put("p99", new JSONNumber(getPercentile(99)));
+		return json;
+	}
+}
@@ -0,0 +1,14 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**Interface to be implemented, along with one of the response handler interfaces, by handlers which want to
+ * tell when a request has been shed by the router (because its waiting queue was full) from any other failure,
+ * f.i. to degrade gracefully instead of reporting an error.
+ * 
+ * Handlers which don't implement it are notified of shed requests through onFailure.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface LoadSheddingHandler {
+	public  void onShed( @SuppressWarnings("rawtypes") AJAXRequest request );
+}
@@ -0,0 +1,16 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * Which waiting requests are shed when a request arrives and the waiting queue is already at its maximum length
+ * 
+ * NOTE: This enum is part of the scheduling core, which must not depend on GWT.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public enum LoadSheddingPolicy {
+	REJECT_NEWEST,			//The request that has just arrived
+	DROP_OLDEST,			//The request which has been waiting the longest
+	DROP_LOWEST_PRIORITY,	//The request with the lowest priority (the newest one, among those with the same priority)
+	DROP_EXPIRED			//Every request whose due time has passed, or else the request that has just arrived
+}
@@ -0,0 +1,18 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+
+/**Interface to be implemented by classes which handle the pages retrieved through a PagedCursor.
+ * Only the page the cursor is currently on is ever delivered: prefetched pages are kept by the cursor
+ * until it moves to them.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface PageHandler<T extends JavaScriptObject> {
+	
+	public  void onPage( int page, JsArray<T> records );
+	
+	public  void onPageFailure( int page, @SuppressWarnings("rawtypes") AJAXRequest request );
+}
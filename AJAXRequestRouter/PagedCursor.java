@@ -0,0 +1,297 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.smartgwt.extensions.utility.requestrouter.jsarray.JsArrayResponseHandler;
+
+/**
+ * A cursor over a paged endpoint, whose pages are arrays of records retrieved through an AJAXRequestRouter.
+ * 
+ * Once the current page has been delivered, the next one (and, optionally, the previous one) is prefetched with
+ * LOW priority, so that moving to it doesn't pay a full round trip; if the cursor moves to a page whose prefetch
+ * is still in flight, the request is promoted to the cursor's priority instead of being sent again.
+ * At most windowSize pages are kept in memory: when the window is full, the pages farthest from the current one
+ * are dropped. When the cursor jumps away, the requests for pages that are no longer adjacent to the current one
+ * are cancelled, so that they free their slots.
+ * 
+ * An empty page is taken as the end of the data: nothing is prefetched past it (see also setLastPage).
+ * 
+ * Subclasses only need to build the url of each page.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public abstract class PagedCursor<T extends JavaScriptObject> {
+	
+	public static final int DEFAULT_WINDOW_SIZE = 5;
+	
+	public static final int UNKNOWN = -1;
+	
+	private final AJAXRequestRouter router;
+	private final PageHandler<T> handler;
+	
+	private int windowSize = DEFAULT_WINDOW_SIZE;
+	private boolean prefetchPrevious = false;
+	private RequestPriority priority = RequestPriority.NORMAL;	//The priority of the requests for the current page
+	
+	private int page = UNKNOWN;			//The current page
+	private int lastPage = UNKNOWN;		//The last page with data, if known
+	
+	private final HashMap<Integer, JsArray<T>> pages = new HashMap<Integer, JsArray<T>>();	//The window
+	@SuppressWarnings("rawtypes")
+	private final HashMap<Integer, AJAXRequest> in_flight = new HashMap<Integer, AJAXRequest>();
+	
+	/**
+	 * 
+	 * @param _router The router the pages are requested through
+	 * @param _handler The handler the current page is delivered to
+	 */
+	public PagedCursor(AJAXRequestRouter _router, PageHandler<T> _handler){
+		router = _router;
+		handler = _handler;
+	}
+	
+	/**
+	 * 
+	 * @param page A page number (>= 0)
+	 * @return The url the page is retrieved from
+	 */
+	public abstract String getPageUrl(int page);
+	
+	/**
+	 * Moves the cursor to a page: it is delivered right away if it's in the window, or as soon as it's retrieved
+	 * @param _page The page number (>= 0)
+	 */
+	public void goTo(int _page) throws IllegalArgumentException{
+		if ( _page < 0 ){
+			throw new IllegalArgumentException();
+		}//else
+		page = _page;
+		cancelDistantRequests();
+		
+		JsArray<T> records = pages.get(page);
+		if ( records != null ){
+			handler.onPage(page, records);
+			prefetch();
+			return ;
+		}//else
+		@SuppressWarnings("rawtypes")
+		AJAXRequest request = in_flight.get(page);
+		if ( request != null ){
+			if ( request.getPriority().compareTo(priority) > 0 ){
+				router.reprioritize(request, priority);	//A prefetch which is now needed right away
+			}
+		}else{
+			request(page, priority);
+		}
+	}
+	
+	/**
+	 * Moves the cursor to the following page
+	 */
+	public void next(){
+		goTo(page + 1);
+	}
+	
+	/**
+	 * Moves the cursor to the preceding page, if any
+	 */
+	public void previous(){
+		if ( page > 0 ){
+			goTo(page - 1);
+		}
+	}
+	
+	/**
+	 * Cancels every pending request and drops all the pages in the window
+	 */
+	@SuppressWarnings("rawtypes")
+	public void close(){
+		for ( AJAXRequest request : new Vector<AJAXRequest>(in_flight.values()) ){
+			router.cancel(request);
+		}
+		in_flight.clear();
+		pages.clear();
+	}
+	
+	/**
+	 * Sends the request for a page
+	 * @param _page
+	 * @param _priority
+	 */
+	private void request(final int _page, RequestPriority _priority){
+		@SuppressWarnings("rawtypes")
+		final AJAXRequest[] request = new AJAXRequest[1];
+		request[0] = new AJAXRequest<T>(getPageUrl(_page), router, new JsArrayResponseHandler<T>() {
+			@Override
+			public void onSuccess(JsArray<T> records) {
+				if ( in_flight.get(_page) != request[0] ){
+					return ;	//Not wanted anymore
+				}//else
+				in_flight.remove(_page);
+				if ( records.length() == 0 && (lastPage == UNKNOWN || lastPage >= _page) ){
+					lastPage = _page - 1;
+				}
+				pages.put(_page, records);
+				trimWindow();
+				if ( _page == page ){
+					handler.onPage(_page, records);
+					prefetch();
+				}
+			}
+
+			@Override
+			public void onFailure(@SuppressWarnings("rawtypes") AJAXRequest r) {
+				if ( in_flight.get(_page) != request[0] ){
+					return ;
+				}//else
+				in_flight.remove(_page);
+				if ( _page == page ){
+					handler.onPageFailure(_page, r);
+				}
+			}
+
+			@Override
+			public void onQueueFull(@SuppressWarnings("rawtypes") AJAXRequest r) {
+				//Nothing to do: the page will be delivered once the request is sent
+			}
+		});
+		request[0].setPriority(_priority);
+		in_flight.put(_page, request[0]);
+		router.sendNewRequest(request[0]);
+	}
+	
+	/**
+	 * Requests the pages adjacent to the current one, unless they are already in the window or in flight
+	 */
+	private void prefetch(){
+		prefetch(page + 1);
+		if ( prefetchPrevious ){
+			prefetch(page - 1);
+		}
+	}
+	
+	private void prefetch(int _page){
+		if ( _page < 0 || (lastPage != UNKNOWN && _page > lastPage) || pages.containsKey(_page) || in_flight.containsKey(_page) ){
+			return ;
+		}//else
+		request(_page, RequestPriority.LOW);
+	}
+	
+	/**
+	 * 
+	 * @param _page
+	 * @return true <=> the page is the current one or one of those that can be prefetched from it
+	 */
+	private boolean isAdjacent(int _page){
+		return _page == page || _page == page + 1 || (prefetchPrevious && _page == page - 1);
+	}
+	
+	/**
+	 * Cancels the requests for pages that are no longer adjacent to the current one
+	 */
+	@SuppressWarnings("rawtypes")
+	private void cancelDistantRequests(){
+		for ( Integer p : new Vector<Integer>(in_flight.keySet()) ){
+			if ( !isAdjacent(p) ){
+				AJAXRequest request = in_flight.remove(p);
+				router.cancel(request);
+			}
+		}
+	}
+	
+	/**
+	 * Drops the pages farthest from the current one, until the window fits its size
+	 */
+	private void trimWindow(){
+		while ( pages.size() > windowSize ){
+			Integer farthest = null;
+			for ( Integer p : pages.keySet() ){
+				if ( farthest == null || Math.abs(p - page) > Math.abs(farthest - page) ){
+					farthest = p;
+				}
+			}
+			pages.remove(farthest);
+		}
+	}
+
+	/**
+	 * 
+	 * @return The current page (UNKNOWN if the cursor hasn't been moved yet)
+	 */
+	public int getPage() {
+		return page;
+	}
+	
+	/**
+	 * 
+	 * @return The last page with data (UNKNOWN if it hasn't been found yet)
+	 */
+	public int getLastPage() {
+		return lastPage;
+	}
+
+	/**
+	 * Sets the last page with data, if it's known in advance, so that nothing is prefetched past it
+	 * @param _lastPage The last page (UNKNOWN <=> found out from the first empty page)
+	 */
+	public void setLastPage(int _lastPage) {
+		lastPage = _lastPage;
+	}
+
+	/**
+	 * 
+	 * @return The maximum number of pages kept in memory
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+	
+	/**
+	 * Sets the maximum number of pages kept in memory
+	 * @param _windowSize The value to be set (must be >= 3, so that the current page and its neighbours fit)
+	 */
+	public void setWindowSize(int _windowSize) throws IllegalArgumentException{
+		if ( _windowSize < 3 ){
+			throw new IllegalArgumentException();
+		}
+		windowSize = _windowSize;
+		trimWindow();
+	}
+
+	/**
+	 * 
+	 * @return true <=> the preceding page is prefetched too
+	 */
+	public boolean isPrefetchPrevious() {
+		return prefetchPrevious;
+	}
+
+	public void setPrefetchPrevious(boolean _prefetchPrevious) {
+		prefetchPrevious = _prefetchPrevious;
+	}
+
+	/**
+	 * 
+	 * @return The priority of the requests for the current page (prefetches always have LOW priority)
+	 */
+	public RequestPriority getPriority() {
+		return priority;
+	}
+
+	public void setPriority(RequestPriority _priority) {
+		priority = _priority;
+	}
+	
+	/**
+	 * 
+	 * @param _page
+	 * @return true <=> the page is in memory, and so moving to it won't send any request
+	 */
+	public boolean isLoaded(int _page){
+		return pages.containsKey(_page);
+	}
+}
@@ -0,0 +1,316 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The index of the responses kept by a PersistentResponseCache: for each cache key, when the response expires
+ * and how large it is, in least recently used order. It enforces the time-to-lives, the byte budget and the
+ * versioning of the keys, while the cache moves the responses themselves in and out of the storage.
+ * 
+ * Whenever a response has to be deleted from the storage (because it has been evicted, it has expired, or it
+ * was stored with another version) its storage key is queued, until the cache takes it through pollRemovedKeys.
+ * 
+ * The index is saved in the storage too, as text (see save): the cache loads it asynchronously, so until then
+ * it only knows the responses stored since it was created, and lookups of any other key are UNKNOWN.
+ * 
+ * NOTE: Like the scheduling core, this class must not depend on GWT, so that it can be tested on a plain JVM.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class PersistentIndex {
+
+	/**
+	 * What the index knows about a key
+	 */
+	public enum Lookup {
+		VALID,		//A response is stored, and it hasn't expired
+		EXPIRED,	//A response was stored, but it has expired: it has just been removed
+		MISSING,	//No response is stored
+		UNKNOWN		//The stored index hasn't been loaded yet: the storage has to be looked up
+	}
+	
+	private static class Entry {
+		private final double expiresAt;
+		private final int bytes;
+
+		private Entry(double _expiresAt, int _bytes){
+			expiresAt = _expiresAt;
+			bytes = _bytes;
+		}
+	}
+
+	private final String prefix;
+	private final String version;
+
+	/**
+	 * Access-ordered map, indexed by cache key: iteration starts from the least recently used entry
+	 */
+	private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private int maxBytes;
+	private int bytes = 0;
+	private int evictions = 0;
+
+	private boolean loaded = false;	//True <=> the index stored by previous pages has been read
+	private boolean dirty = false;	//True <=> the index has changed since it was last saved
+
+	/**
+	 * Storage keys of the responses to be deleted from the storage
+	 */
+	private final ArrayList<String> removedKeys = new ArrayList<String>();
+
+	/**
+	 * 
+	 * @param _prefix The prefix of every storage key
+	 * @param _version The version of the responses (it can't contain line breaks)
+	 * @param _maxBytes The maximum (approximate) size of the responses kept, in bytes (must be >= 1)
+	 */
+	public PersistentIndex(String _prefix, String _version, int _maxBytes) throws IllegalArgumentException{
+		if ( _prefix == null || _version == null || _version.indexOf('\n') >= 0 ){
+			throw new IllegalArgumentException();
+		}
+		prefix = _prefix;
+		version = _version;
+		setMaxBytes(_maxBytes);
+	}
+
+	/**
+	 * 
+	 * @param key A cache key
+	 * @return The key under which the response is kept in the storage: prefix + version + cache key
+	 */
+	public String getStorageKey(String key){
+		return getStorageKey(version, key);
+	}
+
+	private String getStorageKey(String _version, String key){
+		return prefix + _version + " " + key;
+	}
+
+	/**
+	 * Looks a key up, making it the most recently used one
+	 * @param key The cache key
+	 * @param now The current time (in milliseconds)
+	 * @return What the index knows about the key's response
+	 */
+	public Lookup lookup(String key, double now){
+		Entry entry = entries.get(key);
+		if ( entry != null && entry.expiresAt <= now ){
+			remove(key);
+			return Lookup.EXPIRED;
+		}//else
+		if ( entry != null ){
+			return Lookup.VALID;
+		}//else
+		return loaded ? Lookup.MISSING : Lookup.UNKNOWN;
+	}
+
+	/**
+	 * Adds (or replaces) a response, evicting the least recently used ones if the budget is exceeded
+	 * @param key The cache key
+	 * @param expiresAt When the response expires (absolute time, in milliseconds)
+	 * @param _bytes The size of the response, in bytes
+	 * @return true <=> the response fits in the budget, and so it must be written to the storage
+	 */
+	public boolean put(String key, double expiresAt, int _bytes){
+		Entry previous = entries.remove(key);	//Its stored response is overwritten, unless the new one doesn't fit
+		if ( previous != null ){
+			bytes -= previous.bytes;
+			dirty = true;
+		}
+		if ( _bytes > maxBytes ){
+			removedKeys.add(getStorageKey(key));
+			return false;	//Would evict everything else and still not fit
+		}//else
+		entries.put(key, new Entry(expiresAt, _bytes));
+		bytes += _bytes;
+		dirty = true;
+		evict();
+		return true;
+	}
+
+	/**
+	 * Removes a response
+	 * @param key The cache key
+	 * @return true <=> the index knew the response
+	 */
+	public boolean remove(String key){
+		removedKeys.add(getStorageKey(key));	//It may be in the storage even if the index doesn't know it yet
+		Entry entry = entries.remove(key);
+		if ( entry == null ){
+			return false;
+		}//else
+		bytes -= entry.bytes;
+		dirty = true;
+		return true;
+	}
+
+	/**
+	 * Removes every response known to the index
+	 */
+	public void clear(){
+		for ( String key : entries.keySet() ){
+			removedKeys.add(getStorageKey(key));
+		}
+		entries.clear();
+		bytes = 0;
+		dirty = true;
+	}
+
+	/**
+	 * Evicts the least recently used responses until the index is within its budget
+	 */
+	private void evict(){
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while ( bytes > maxBytes && it.hasNext() ){
+			Map.Entry<String, Entry> eldest = it.next();
+			it.remove();
+			removedKeys.add(getStorageKey(eldest.getKey()));
+			bytes -= eldest.getValue().bytes;
+			evictions++;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Merges the index saved by previous pages with the responses added since this index was created (which
+	 * are more recently used): responses which have expired or have a different version are removed
+	 * @param stored The saved index (see save), or null if there is none
+	 * @param now The current time (in milliseconds)
+	 */
+	public void load(String stored, double now){
+		LinkedHashMap<String, Entry> merged = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		if ( stored != null ){
+			String[] lines = stored.split("\n");
+			String storedVersion = lines[0];
+			for ( int i = 1; i < lines.length; i++ ){
+				String[] fields = lines[i].split("\t", 3);
+				if ( fields.length < 3 ){
+					continue;
+				}
+				String key = fields[2];
+				if ( !storedVersion.equals(version) ){
+					removedKeys.add(getStorageKey(storedVersion, key));
+					dirty = true;
+					continue;
+				}//else
+				if ( entries.containsKey(key) ){
+					continue;	//Already replaced by a fresh response
+				}
+				Entry entry;
+				try{
+					entry = new Entry(Double.parseDouble(fields[0]), Integer.parseInt(fields[1]));
+				}catch(NumberFormatException e){
+					removedKeys.add(getStorageKey(key));
+					dirty = true;
+					continue;
+				}
+				if ( entry.expiresAt <= now ){
+					removedKeys.add(getStorageKey(key));
+					dirty = true;
+					continue;
+				}//else
+				merged.put(key, entry);
+				bytes += entry.bytes;
+			}
+		}
+		merged.putAll(entries);
+		entries = merged;
+		loaded = true;
+		evict();
+	}
+
+	/**
+	 * Serializes the index: its version on the first line, then one line for each response, least recently
+	 * used first (expiration time, size and cache key, separated by tabs)
+	 * @return The text to be saved, which load accepts
+	 */
+	public String save(){
+		StringBuilder index = new StringBuilder(version);
+		for ( Map.Entry<String, Entry> e : entries.entrySet() ){
+			index.append('\n').append((long) e.getValue().expiresAt).append('\t')
+				.append(e.getValue().bytes).append('\t').append(e.getKey());
+		}
+		dirty = false;
+		return index.toString();
+	}
+
+	/**
+	 * 
+	 * @return The storage keys of the responses to be deleted from the storage since the last call (they're forgotten)
+	 */
+	public ArrayList<String> pollRemovedKeys(){
+		ArrayList<String> keys = new ArrayList<String>(removedKeys);
+		removedKeys.clear();
+		return keys;
+	}
+
+	/**
+	 * 
+	 * @return true <=> the index has changed since it was last saved (reads only change the LRU order, which
+	 * is saved along with the next change)
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * 
+	 * @return true <=> the index saved by previous pages has been loaded
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * 
+	 * @return How many responses are known to the index
+	 */
+	public int size(){
+		return entries.size();
+	}
+
+	/**
+	 * 
+	 * @return The approximate size (in bytes) of the responses known to the index
+	 */
+	public int getBytes(){
+		return bytes;
+	}
+
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the maximum (approximate) size in bytes of the responses kept: if they're larger, LRU entries are evicted right away
+	 * @param _maxBytes The value to be set (must be >= 1)
+	 */
+	public void setMaxBytes(int _maxBytes) throws IllegalArgumentException{
+		if ( _maxBytes < 1 ){
+			throw new IllegalArgumentException();
+		}
+		maxBytes = _maxBytes;
+		evict();
+	}
+
+	/**
+	 * 
+	 * @return How many responses have been evicted to stay within the budget (expired responses are not counted)
+	 */
+	public int getEvictions() {
+		return evictions;
+	}
+
+	public void resetEvictions() {
+		evictions = 0;
+	}
+}
@@ -0,0 +1,314 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.smartgwt.extensions.utility.requestrouter.storage.PersistentStorage;
+import com.smartgwt.extensions.utility.requestrouter.storage.StorageCallback;
+
+/**
+ * A response cache which survives page reloads, kept in a PersistentStorage (f.i. IndexedDBStorage or WebStorage)
+ * below the router's in-memory ResponseCache, so that large and rarely changing payloads don't have to be
+ * downloaded again at each cold start.
+ *
+ * Responses are stored under versioned keys (prefix + version + cache key): changing the version, f.i. when the
+ * format of the responses changes, discards every response stored with the previous one. Each response is kept
+ * for the time-to-live chosen by the request that retrieved it, and the cache has a budget in (approximate)
+ * bytes: when it's exceeded, the least recently used responses are evicted.
+ * The index of the stored responses (their time-to-live, size and LRU order) is itself kept in the storage,
+ * and it's loaded asynchronously when the cache is created; reads never block, since responses are always
+ * handed out through a callback.
+ *
+ * The bookkeeping (time-to-lives, budget, LRU order and versions) is done by a PersistentIndex, which doesn't
+ * depend on GWT and is unit tested on a plain JVM; with a MemoryStorage, the whole cache can be tested in a
+ * headless browser.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class PersistentResponseCache {
+
+	public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+	public static final String DEFAULT_PREFIX = "requestrouter ";
+
+	private static final String INDEX = "index";
+
+	private final PersistentStorage storage;
+	private final String prefix;
+
+	private final PersistentIndex index;
+
+	private boolean indexSaveScheduled = false;
+
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * Creates a cache with the default prefix and budget
+	 * @param _storage Where the responses are stored
+	 * @param _version The version of the stored responses: responses stored with any other version are discarded
+	 */
+	public PersistentResponseCache(PersistentStorage _storage, String _version){
+		this(_storage, DEFAULT_PREFIX, _version, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 *
+	 * @param _storage Where the responses are stored
+	 * @param _prefix The prefix of every key written to the storage, so that several caches (or other data) can share it
+	 * @param _version The version of the stored responses (it can't contain line breaks): responses stored with
+	 * 				any other version are discarded
+	 * @param _maxBytes The maximum (approximate) size of the responses kept, in bytes (must be >= 1)
+	 */
+	public PersistentResponseCache(PersistentStorage _storage, String _prefix, String _version, int _maxBytes) throws IllegalArgumentException{
+		if ( _storage == null ){
+			throw new IllegalArgumentException();
+		}
+		index = new PersistentIndex(_prefix, _version, _maxBytes);
+		storage = _storage;
+		prefix = _prefix;
+		storage.get(prefix + INDEX, new StorageCallback() {
+			@Override
+			public void onLoaded(String value) {
+				index.load(value, Duration.currentTimeMillis());
+				applyIndexChanges();
+			}
+		});
+	}
+
+	/**
+	 * Reads a response asynchronously
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @param callback Called with the response, or null if there is no valid response for the key
+	 */
+	public void get(final String key, final CachedResponseCallback callback){
+		PersistentIndex.Lookup lookup = index.lookup(key, Duration.currentTimeMillis());
+		if ( lookup == PersistentIndex.Lookup.EXPIRED || lookup == PersistentIndex.Lookup.MISSING ){
+			applyIndexChanges();
+			misses++;
+			Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+				@Override
+				public void execute() {
+					callback.onLoaded(null, null);
+				}
+			});
+			return ;
+		}//else
+		//Until the index is loaded, the storage itself is looked up
+		storage.get(index.getStorageKey(key), new StorageCallback() {
+			@Override
+			public void onLoaded(String value) {
+				JavaScriptObject response = decode(value);
+				if ( response == null ){
+					misses++;
+					if ( value != null ){
+						remove(key);	//Expired or malformed
+					}
+					callback.onLoaded(null, null);
+					return ;
+				}//else
+				hits++;
+				//The size is known from the stored text, which doesn't have to be serialized again
+				callback.onLoaded(response, ResponseDigest.of(response, value.length() - value.indexOf('\n') - 1));
+			}
+		});
+	}
+
+	/**
+	 * Stores a response, evicting the least recently used ones if the budget is exceeded
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @param response The response to be stored: it's serialized
+	 * @param ttl The time-to-live of the response (in seconds): with non positive values the response is not stored
+	 * @return true <=> the response has been stored
+	 */
+	public boolean put(String key, JavaScriptObject response, int ttl){
+		if ( ttl <= 0 ){
+			return false;
+		}//else
+		return put(key, serialize(response), ttl);
+	}
+
+	/**
+	 * Stores a response's JSON text (f.i. the body it was parsed from), evicting the least recently used
+	 * responses if the budget is exceeded
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @param json The response's JSON text
+	 * @param ttl The time-to-live of the response (in seconds): with non positive values the response is not stored
+	 * @return true <=> the response has been stored
+	 */
+	public boolean put(String key, String json, int ttl){
+		if ( ttl <= 0 || json == null || json.length() == 0 ){
+			return false;
+		}//else
+		double expiresAt = Duration.currentTimeMillis() + ttl * 1000.;
+		boolean fits = index.put(key, expiresAt, 2 * json.length());	//2 bytes per character
+		applyIndexChanges();
+		if ( fits ){
+			storage.put(index.getStorageKey(key), (long) expiresAt + "\n" + json);
+		}
+		return fits;
+	}
+
+	/**
+	 * Removes a response from the cache
+	 * @param key The cache key of the request
+	 * @return true <=> there was a response for the key (as far as the index loaded so far knows)
+	 */
+	public boolean remove(String key){
+		boolean removed = index.remove(key);
+		applyIndexChanges();
+		return removed;
+	}
+
+	/**
+	 * Removes every response from the cache (statistics are not reset)
+	 */
+	public void clear(){
+		index.clear();
+		applyIndexChanges();
+	}
+
+	/**
+	 * Deletes from the storage the responses the index has dropped, and, if the index has changed, saves it once
+	 * the current event has been handled (so that several changes are saved together); nothing is saved until
+	 * the stored index has been loaded, or it would be overwritten
+	 */
+	private void applyIndexChanges(){
+		for ( String storageKey : index.pollRemovedKeys() ){
+			storage.remove(storageKey);
+		}
+		if ( indexSaveScheduled || !index.isDirty() ){
+			return ;
+		}//else
+		indexSaveScheduled = true;
+		Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+			@Override
+			public void execute() {
+				indexSaveScheduled = false;
+				if ( index.isLoaded() && index.isDirty() ){	//Otherwise the load will apply the changes again
+					storage.put(prefix + INDEX, index.save());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Parses a stored response
+	 * @param value The stored value: expiration time on the first line, then the response's JSON
+	 * @return The response, or null if it's missing, expired or malformed
+	 */
+	private static JavaScriptObject decode(String value){
+		if ( value == null ){
+			return null;
+		}//else
+		int newline = value.indexOf('\n');
+		if ( newline < 0 ){
+			return null;
+		}//else
+		try{
+			if ( Double.parseDouble(value.substring(0, newline)) <= Duration.currentTimeMillis() ){
+				return null;
+			}
+		}catch(NumberFormatException e){
+			return null;
+		}
+		return parse(value.substring(newline + 1));
+	}
+
+	private static native String serialize(JavaScriptObject jso) /*-{
+		try {
+			return JSON.stringify(jso) || "";
+		} catch (e) {
+			return "";
+		}
+	}-*/;
+
+	private static native JavaScriptObject parse(String json) /*-{
+		try {
+			var jso = JSON.parse(json);
+			return typeof jso == "object" ? jso : null;
+		} catch (e) {
+			return null;
+		}
+	}-*/;
+
+	/**
+	 *
+	 * @return The version of the responses kept
+	 */
+	public String getVersion() {
+		return index.getVersion();
+	}
+
+	/**
+	 *
+	 * @return true <=> the index of the responses stored by previous pages has been read
+	 */
+	public boolean isLoaded() {
+		return index.isLoaded();
+	}
+
+	/**
+	 *
+	 * @return How many responses are currently stored (as far as the index loaded so far knows)
+	 */
+	public int size(){
+		return index.size();
+	}
+
+	/**
+	 *
+	 * @return The approximate size (in bytes) of the responses currently stored
+	 */
+	public int getBytes(){
+		return index.getBytes();
+	}
+
+	public int getMaxBytes() {
+		return index.getMaxBytes();
+	}
+
+	/**
+	 * Sets the maximum (approximate) size in bytes of the responses kept: if the cache is larger, LRU entries are evicted right away
+	 * @param _maxBytes The value to be set (must be >= 1)
+	 */
+	public void setMaxBytes(int _maxBytes) throws IllegalArgumentException{
+		index.setMaxBytes(_maxBytes);
+		applyIndexChanges();
+	}
+
+	/**
+	 *
+	 * @return How many lookups have found a valid response
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 *
+	 * @return How many lookups haven't found a valid response
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 *
+	 * @return How many responses have been evicted to stay within the budget (expired responses are not counted)
+	 */
+	public int getEvictions() {
+		return index.getEvictions();
+	}
+
+	/**
+	 * Resets hits, misses and evictions counters
+	 */
+	public void resetStatistics(){
+		hits = 0;
+		misses = 0;
+		index.resetEvictions();
+	}
+}
@@ -0,0 +1,93 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * The ordering of the router's waiting queues, which lets the effective priority of a request rise with the
+ * time it has spent waiting, so that LOW requests can't be starved by a steady flow of higher priority ones.
+ *
+ * A waiting request gains one priority level every agingInterval milliseconds, up to the cap level; requests
+ * whose priority is above the cap (f.i. URGENT, with the default cap HIGH) never age, and always come first.
+ * Among the requests that may age, the effective priority at any time only depends on the sum
+ * 		enqueuing time + priority level * agingInterval
+ * which doesn't change while the request is waiting: so aging never requires the heap to be rebuilt, and requests
+ * that have reached the cap are served in the order they reached it.
+ *
+ * With a non positive agingInterval aging is disabled, and requests are ordered by priority only (then by ID):
+ * this is the strict-priority SchedulingPolicy, and the default one.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class PriorityAging extends SchedulingPolicy {
+
+	public static final int DEFAULT_AGING_INTERVAL = 0;	//Disabled
+
+	public static final RequestPriority DEFAULT_CAP = RequestPriority.HIGH;
+
+	private int agingInterval = DEFAULT_AGING_INTERVAL;
+
+	private RequestPriority cap = DEFAULT_CAP;
+
+	/**
+	 *
+	 * @return How many milliseconds of waiting make a request gain one priority level (non positive <=> aging disabled)
+	 */
+	public int getAgingInterval() {
+		return agingInterval;
+	}
+
+	/**
+	 * NOTE: Queues ordered by this object must be reordered after this change (see RequestScheduler.reorder)
+	 * @param _agingInterval How many milliseconds of waiting make a request gain one priority level (non positive <=> aging disabled)
+	 */
+	protected void setAgingInterval(int _agingInterval) {
+		agingInterval = _agingInterval;
+	}
+
+	/**
+	 *
+	 * @return The highest priority a request can reach by aging
+	 */
+	public RequestPriority getCap() {
+		return cap;
+	}
+
+	/**
+	 * NOTE: Queues ordered by this object must be reordered after this change (see RequestScheduler.reorder)
+	 * @param _cap The highest priority a request can reach by aging
+	 */
+	protected void setCap(RequestPriority _cap) {
+		cap = _cap;
+	}
+
+	/**
+	 *
+	 * @return true <=> aging is enabled
+	 */
+	public boolean isEnabled(){
+		return agingInterval > 0;
+	}
+
+	@Override
+	public int compare(Schedulable r1, Schedulable r2) {
+		if ( !isEnabled() || !ages(r1) || !ages(r2) ){
+			return IndexedRequestQueue.PRIORITY_ORDER.compare(r1, r2);	//Requests above the cap come first anyway
+		}//else
+		int c = Double.compare(agingKey(r1), agingKey(r2));
+		return c != 0 ? c : r1.getID() - r2.getID();
+	}
+
+	/**
+	 *
+	 * @return true <=> the request's priority can rise with waiting time
+	 */
+	private boolean ages(Schedulable request){
+		return request.getPriority().compareTo(cap) >= 0;
+	}
+
+	/**
+	 * The time-invariant key of a request which may age: the smaller, the higher its effective priority
+	 */
+	private double agingKey(Schedulable request){
+		return request.getEnqueuedAt() + request.getPriority().ordinal() * (double) agingInterval;
+	}
+}
@@ -0,0 +1,14 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * How a request sent over the network has ended (or, for REJECTED and SHED, why it has not been sent at all)
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public enum RequestOutcome {
+	SUCCESS, FAILURE, TIMEOUT,
+	REJECTED,	//Failed fast by its host's CircuitBreaker
+	CANCELLED,	//Cancelled by the caller (see AJAXRequestRouter.cancel)
+	SHED		//Dropped by the router because its waiting queue was full (see LoadSheddingPolicy)
+}
@@ -0,0 +1,482 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The queueing and dispatch core of AJAXRequestRouter: it decides which requests may be sent and when, while
+ * the actual sending is left to a Dispatcher.
+ * 
+ * At most maxContemporaryRequests requests are started at the same time, while the exceeding ones wait in the
+ * waiting_queue of their host's SlotPool; urgent requests may also use up to maxContemporaryUrgentRequests extra
+ * slots. Whenever a slot is released, the request which comes first (according to the scheduler's
+ * SchedulingPolicy) among the heads of the waiting queues of the hosts whose own limit is not reached is started.
+ * The policy can be replaced at any time: the waiting queues are then rebuilt.
+ * Several schedulers can also share a SharedSlotLimit, capping the requests in flight across all of them.
+ * 
+ * NOTE: The scheduler doesn't depend on GWT, so it can also run (and be benchmarked) on a plain JVM: it must
+ * be kept that way. Timing (f.i. the enqueuing time used by PriorityAging) is up to the caller.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public abstract class RequestScheduler<R extends Schedulable, P extends SlotPool<R>> {
+
+	private short maxContemporaryRequests;
+	
+	/**
+	 * How many urgent requests may be issued at the same time
+	 */
+	private short maxContemporaryUrgentRequests;
+	
+	private final HashSet<R> queue_started = new HashSet<R>();
+	private final HashSet<R> queue_urgent = new HashSet<R>();
+	
+	/**
+	 * Slot pools (each one with its own waiting_queue), by origin
+	 */
+	private final HashMap<String, P> pools = new HashMap<String, P>();
+	
+	private SchedulingPolicy policy;
+	
+	/**
+	 * The ordering of every waiting queue: it always follows the current policy
+	 */
+	private final Comparator<Schedulable> ordering = new Comparator<Schedulable>() {
+		@Override
+		public int compare(Schedulable r1, Schedulable r2) {
+			return policy.compare(r1, r2);
+		}
+	};
+	
+	private final Dispatcher<R> dispatcher;
+	
+	private SharedSlotLimit sharedLimit = null;	//null <=> only the scheduler's own limits apply
+	
+	/**
+	 * 
+	 * @param _dispatcher Sends the requests which are given a slot
+	 * @param _policy The policy ordering the waiting queues (null <=> by priority, then by ID)
+	 * @param _maxContemporaryRequests The maximum number of concurrent requests (must be >= 1)
+	 * @param _maxContemporaryUrgentRequests The maximum number of extra concurrent urgent requests (must be >= 0)
+	 */
+	protected RequestScheduler(Dispatcher<R> _dispatcher, SchedulingPolicy _policy, short _maxContemporaryRequests,
+								short _maxContemporaryUrgentRequests) throws IllegalArgumentException{
+		if ( _maxContemporaryRequests < 1 || _maxContemporaryUrgentRequests < 0 ){
+			throw new IllegalArgumentException();
+		}
+		dispatcher = _dispatcher;
+		policy = _policy != null ? _policy : new PriorityAging();
+		maxContemporaryRequests = _maxContemporaryRequests;
+		maxContemporaryUrgentRequests = _maxContemporaryUrgentRequests;
+	}
+	
+	/**
+	 * Creates the slot pool of a host, the first time a request to it is scheduled
+	 * @param host The origin served by the pool
+	 * @return The new pool, whose waiting queue MUST be ordered by getOrdering()
+	 */
+	protected abstract P newPool(String host);
+	
+	/**
+	 * 
+	 * @param host The origin of the host
+	 * @return The slot pool of the host, which is created if it doesn't exist yet
+	 */
+	public P getPool(String host){
+		P pool = pools.get(host);
+		if ( pool == null ){
+			pool = newPool(host);
+			pools.put(host, pool);
+		}
+		return pool;
+	}
+	
+	/**
+	 * 
+	 * @param host The origin of the host
+	 * @return The slot pool of the host, or null if it doesn't exist
+	 */
+	public P findPool(String host){
+		return pools.get(host);
+	}
+	
+	/**
+	 * 
+	 * @return The slot pools of all the hosts the scheduler has been used for
+	 */
+	public Collection<P> getPools(){
+		return pools.values();
+	}
+	
+	/**
+	 * Starts the request right away, if possible, or else puts it in the waiting_queue of its host
+	 * @param request The request to be started
+	 * @return true <=> the request has been started; false <=> it has to wait
+	 */
+	public boolean submit(R request){
+		if ( tryToStart(request) ){
+			return true;
+		}//else
+		policy.onEnqueued(request);
+		getPool(request.getHost()).waiting_queue.add(request);
+		return false;
+	}
+	
+	/**
+	 * Starts the request if there is a free slot for it, either among the standard ones or, for urgent requests,
+	 * among the urgent ones; both the scheduler's and the request's host limits must allow it
+	 * @param request The request to be started
+	 * @return true <=> the request has been started
+	 */
+	private boolean tryToStart(R request){
+		P pool = getPool(request.getHost());
+		if ( sharedLimit != null && !sharedLimit.tryAcquire() ){
+			return false;
+		}//else
+		if ( queue_started.size() < maxContemporaryRequests && pool.hasFreeSlot() ){
+			//Request can be started right now
+			queue_started.add( request ) ;
+			pool.queue_started.add( request ) ;
+			dispatcher.start(request);
+			return true;
+		}else if ( request.getPriority() == RequestPriority.URGENT && queue_urgent.size() < maxContemporaryUrgentRequests 
+					&& pool.hasFreeUrgentSlot() ){
+			//Too many requests started, but there is room in the urgent requests' queue: request can be started as urgent
+			queue_urgent.add( request ) ;
+			pool.queue_urgent.add( request ) ;
+			dispatcher.start(request);
+			return true;
+		}else{
+			if ( sharedLimit != null ){
+				sharedLimit.release();
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Starts as many waiting requests as the scheduler's limit allows, each time choosing the request which comes
+	 * first among the heads of the waiting queues of those hosts whose own limit is not reached.
+	 * If the scheduler shares a SharedSlotLimit, the other schedulers sharing it get their turns too.
+	 */
+	public void dispatch(){
+		if ( sharedLimit != null ){
+			sharedLimit.dispatch();
+		}else{
+			while ( dispatchOne() );
+		}
+	}
+	
+	/**
+	 * Starts the request which comes first among the heads of the waiting queues of those hosts whose own limit
+	 * is not reached, if the scheduler's limits allow it
+	 * @return true <=> a request has been started
+	 */
+	protected boolean dispatchOne(){
+		if ( queue_started.size() >= maxContemporaryRequests ){
+			return false;
+		}//else
+		P next = null;
+		for ( P pool : pools.values() ){
+			if ( !pool.waiting_queue.isEmpty() && pool.hasFreeSlot() 
+					&& (next == null || ordering.compare(pool.waiting_queue.peek(), next.waiting_queue.peek()) < 0) ){
+				next = pool;
+			}
+		}
+		if ( next == null || (sharedLimit != null && !sharedLimit.tryAcquire()) ){
+			return false;
+		}//else
+		R request = next.waiting_queue.poll();
+		policy.onDequeued(request, true);
+		queue_started.add( request ) ;
+		next.queue_started.add( request ) ;
+		dispatcher.start(request);
+		return true;
+	}
+	
+	/**
+	 * Frees the slot taken by a request, both in the scheduler and in its host's pool.
+	 * NOTE: It doesn't start any waiting request: call dispatch afterwards
+	 * @param request
+	 * @return true <=> the request was holding a slot
+	 */
+	public boolean release(R request){
+		//The request's priority may have changed since it was started, so it can't tell which queue it is in:
+		//both are hash based, so just try them in turn
+		boolean started = queue_urgent.remove(request) || queue_started.remove(request);
+		if ( started && sharedLimit != null ){
+			sharedLimit.release();
+		}
+		P pool = pools.get(request.getHost());
+		if ( pool != null && !pool.queue_urgent.remove(request) ){
+			pool.queue_started.remove(request);
+		}
+		return started;
+	}
+	
+	/**
+	 * Removes a request from the waiting_queue of its host, in O(log n) time
+	 * @param request
+	 * @return true <=> the request was waiting
+	 */
+	public boolean remove(R request){
+		P pool = pools.get(request.getHost());
+		if ( pool == null || !pool.waiting_queue.remove(request) ){
+			return false;
+		}//else
+		policy.onDequeued(request, false);
+		return true;
+	}
+	
+	/**
+	 * Restores the order of the waiting_queue after the priority (or anything else the policy depends on, f.i. the
+	 * timeout) of a waiting request has changed, in O(log n) time.
+	 * A waiting request which has become URGENT is started right away if there is room for it among urgent requests.
+	 * @param request The request whose priority has changed
+	 * @return 	RequestStatus.QUEUED		<=> The request is still waiting;
+	 * 		   	RequestStatus.STARTED		<=> The request has been started right now
+	 * 			RequestStatus.LOST			<=>	The request wasn't waiting
+	 */
+	public RequestStatus reprioritized(R request){
+		P pool = pools.get(request.getHost());
+		if ( pool == null || !pool.waiting_queue.contains(request) ){
+			return RequestStatus.LOST;
+		}//else
+		if ( request.getPriority() == RequestPriority.URGENT ){
+			pool.waiting_queue.remove(request);
+			if ( tryToStart(request) ){
+				policy.onDequeued(request, true);	//Like any other request given a slot (f.i. WRR's virtual time advances)
+				return RequestStatus.STARTED;
+			}//else
+			policy.onDequeued(request, false);
+			policy.onEnqueued(request);
+			pool.waiting_queue.add(request);
+		}else{
+			policy.onDequeued(request, false);
+			policy.onEnqueued(request);
+			pool.waiting_queue.update(request);
+		}
+		return RequestStatus.QUEUED;
+	}
+	
+	/**
+	 * Chooses which waiting requests have to be shed because the waiting queues are full, in O(n) time: it doesn't
+	 * remove them
+	 * @param policy
+	 * @param newest The request that has just been added to the waiting queues
+	 * @param now The current time (in milliseconds)
+	 * @return The requests to be shed (at least one)
+	 */
+	public ArrayList<R> selectVictims(LoadSheddingPolicy policy, R newest, double now){
+		ArrayList<R> victims = new ArrayList<R>();
+		R victim = null;
+		for ( P pool : pools.values() ){
+			for ( R request : pool.waiting_queue.toList() ){
+				switch ( policy ){
+					case DROP_OLDEST :
+						if ( victim == null || request.getEnqueuedAt() < victim.getEnqueuedAt()
+								|| (request.getEnqueuedAt() == victim.getEnqueuedAt() && request.getID() < victim.getID()) ){
+							victim = request;
+						}
+						break;
+					case DROP_LOWEST_PRIORITY :
+						if ( victim == null || IndexedRequestQueue.PRIORITY_ORDER.compare(request, victim) > 0 ){
+							victim = request;
+						}
+						break;
+					case DROP_EXPIRED :
+						if ( request.getDueAt() <= now ){
+							victims.add(request);
+						}
+						break;
+					default :
+						break;
+				}
+			}
+		}
+		if ( victim != null ){
+			victims.add(victim);
+		}
+		if ( victims.isEmpty() ){
+			victims.add(newest);
+		}
+		return victims;
+	}
+	
+	/**
+	 * 
+	 * @param request
+	 * @return true <=> the request is waiting for a slot
+	 */
+	public boolean isWaiting(R request){
+		P pool = pools.get(request.getHost());
+		return pool != null && pool.waiting_queue.contains(request);
+	}
+	
+	/**
+	 * 
+	 * @param request
+	 * @return true <=> the request is holding a slot
+	 */
+	public boolean isStarted(R request){
+		return queue_started.contains(request) || queue_urgent.contains(request);
+	}
+	
+	/**
+	 * Rebuilds every waiting queue: it must be called when the ordering itself changes (f.i. its aging settings)
+	 */
+	public void reorder(){
+		for ( P pool : pools.values() ){
+			pool.waiting_queue.reorder();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return A snapshot of the requests holding a slot
+	 */
+	public ArrayList<R> getStartedRequests(){
+		ArrayList<R> requests = new ArrayList<R>(queue_started);
+		requests.addAll(queue_urgent);
+		return requests;
+	}
+	
+	/**
+	 * 
+	 * @return A snapshot of the requests waiting for a slot, in no particular order
+	 */
+	public ArrayList<R> getWaitingRequests(){
+		ArrayList<R> requests = new ArrayList<R>();
+		for ( P pool : pools.values() ){
+			requests.addAll(pool.waiting_queue.toList());
+		}
+		return requests;
+	}
+	
+	/**
+	 * 
+	 * @return How many requests, to any host, are waiting for a slot
+	 */
+	public int getWaitingRequestsCount(){
+		int count = 0;
+		for ( P pool : pools.values() ){
+			count += pool.getWaitingRequestsCount();
+		}
+		return count;
+	}
+	
+	/**
+	 * 
+	 * @return How many requests, to any host, are in flight in the standard slots
+	 */
+	public int getStartedRequestsCount(){
+		return queue_started.size();
+	}
+	
+	/**
+	 * 
+	 * @return How many requests, to any host, are in flight in the urgent slots
+	 */
+	public int getUrgentRequestsCount(){
+		return queue_urgent.size();
+	}
+	
+	/**
+	 * 
+	 * @return The ordering of the waiting queues, which follows the current policy
+	 */
+	public Comparator<Schedulable> getOrdering() {
+		return ordering;
+	}
+	
+	/**
+	 * 
+	 * @return The policy ordering the waiting queues
+	 */
+	public SchedulingPolicy getPolicy() {
+		return policy;
+	}
+	
+	/**
+	 * Replaces the policy ordering the waiting queues: the waiting requests are handed over to the new policy
+	 * in the order they arrived, and every waiting queue is rebuilt, in O(n log n) time
+	 * @param _policy The new policy (null <=> by priority, then by ID)
+	 */
+	public void setPolicy(SchedulingPolicy _policy) {
+		ArrayList<R> waiting = getWaitingRequests();
+		Collections.sort(waiting, new Comparator<R>() {
+			@Override
+			public int compare(R r1, R r2) {
+				return r1.getID() - r2.getID();
+			}
+		});
+		for ( R request : waiting ){
+			policy.onDequeued(request, false);
+		}
+		policy = _policy != null ? _policy : new PriorityAging();
+		for ( R request : waiting ){
+			policy.onEnqueued(request);
+		}
+		reorder();
+	}
+	
+	/**
+	 * 
+	 * @return The cap shared with other schedulers (null if there is none)
+	 */
+	public SharedSlotLimit getSharedLimit() {
+		return sharedLimit;
+	}
+	
+	/**
+	 * Makes the scheduler share a cap on the requests in flight with other schedulers; the requests it already
+	 * has in flight are moved from the old cap to the new one.
+	 * NOTE: It doesn't start any waiting request: call dispatch afterwards
+	 * @param _sharedLimit The cap to be shared (null <=> only the scheduler's own limits apply)
+	 */
+	public void setSharedLimit(SharedSlotLimit _sharedLimit) {
+		int inFlight = queue_started.size() + queue_urgent.size();
+		if ( sharedLimit != null ){
+			sharedLimit.unregister(this, inFlight);
+		}
+		sharedLimit = _sharedLimit;
+		if ( sharedLimit != null ){
+			sharedLimit.register(this, inFlight);
+		}
+	}
+	
+	public short getMaxContemporaryRequests() {
+		return maxContemporaryRequests;
+	}
+
+	/**
+	 * NOTE: It doesn't start any waiting request: call dispatch afterwards
+	 * @param _maxContemporaryRequests The value to be set (must be >= 1)
+	 */
+	public void setMaxContemporaryRequests(short _maxContemporaryRequests) throws IllegalArgumentException{
+		if ( _maxContemporaryRequests < 1 ){
+			throw new IllegalArgumentException();
+		}
+		maxContemporaryRequests = _maxContemporaryRequests;
+	}
+
+	public short getMaxContemporaryUrgentRequests() {
+		return maxContemporaryUrgentRequests;
+	}
+
+	/**
+	 * 
+	 * @param _maxContemporaryUrgentRequests The value to be set (must be >= 0)
+	 */
+	public void setMaxContemporaryUrgentRequests(short _maxContemporaryUrgentRequests) throws IllegalArgumentException{
+		if ( _maxContemporaryUrgentRequests < 0 ){
+			throw new IllegalArgumentException();
+		}
+		maxContemporaryUrgentRequests = _maxContemporaryUrgentRequests;
+	}
+}
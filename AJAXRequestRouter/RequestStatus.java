@@ -1,5 +1,6 @@
 package com.smartgwt.extensions.utility.requestrouter;
 
 public enum RequestStatus {
-	QUEUED, STARTED, DELETED, LOST
+	QUEUED, STARTED, DELETED, LOST, CANCELLED,
+	SHED	//Dropped by the router because its waiting queue was full (see LoadSheddingPolicy)
 }
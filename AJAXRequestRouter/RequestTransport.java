@@ -0,0 +1,27 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**Interface to be implemented by the mechanisms an AJAXRequest can be sent through (JSONP script injection,
+ * XMLHttpRequest, ...).
+ * 
+ * A transport must complete every request it sends by calling its handleAJAXResponse method, with the data
+ * retrieved or with null if the request fails; deadlines are not its concern, since they are tracked by the router.
+ * Transports are shared by many requests: any per-request state must be stored in the request itself
+ * (see AJAXRequest.setTransportHandle).
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface RequestTransport {
+	/**
+	 * Sends the request to the remote server
+	 * @param request The request to be sent
+	 */
+	public  void send( @SuppressWarnings("rawtypes") AJAXRequest request );
+	
+	/**
+	 * Stops a request previously sent, releasing any resource it holds: after this call, the request must never
+	 * be completed by the transport
+	 * @param request The request to be aborted
+	 */
+	public  void abort( @SuppressWarnings("rawtypes") AJAXRequest request );
+}
@@ -0,0 +1,311 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * An in-memory cache for the responses retrieved by an AJAXRequestRouter.
+ *
+ * Responses are indexed by normalized url plus response type, and each one is kept for the time-to-live chosen
+ * by the request that retrieved it. The cache has a budget both in number of entries and in (approximate) bytes:
+ * when either is exceeded, the least recently used entries are evicted. Sizes are estimated, along with the
+ * fingerprints telling whether a response has changed, without serializing the responses (see ResponseDigest).
+ * Expired responses are not served as valid ones, but they are kept (until evicted) so that they can still
+ * be served as stale ones to requests in stale-while-revalidate mode.
+ *
+ * NOTE: Cached responses are shared by every handler they are delivered to, so handlers should not modify them.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class ResponseCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 100;
+
+	public static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+	private static class Entry {
+		private final JavaScriptObject response;
+		private final double expiresAt;
+		private final int bytes;
+		private final ResponseDigest digest;	//Its fingerprint tells if a newer response has actually changed
+
+		private Entry(JavaScriptObject _response, double _expiresAt, ResponseDigest _digest){
+			response = _response;
+			expiresAt = _expiresAt;
+			bytes = _digest.getBytes();
+			digest = _digest;
+		}
+	}
+
+	/**
+	 * Access-ordered map: iteration starts from the least recently used entry
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private int maxEntries;
+	private int maxBytes;
+	private int bytes = 0;
+
+	private int hits = 0;
+	private int misses = 0;
+	private int evictions = 0;
+
+	/**
+	 * Creates a cache with the default budget
+	 */
+	public ResponseCache(){
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 *
+	 * @param _maxEntries The maximum number of responses kept (must be >= 1)
+	 * @param _maxBytes The maximum (approximate) size of the responses kept, in bytes (must be >= 1)
+	 */
+	public ResponseCache(int _maxEntries, int _maxBytes) throws IllegalArgumentException{
+		setMaxEntries(_maxEntries);
+		setMaxBytes(_maxBytes);
+	}
+
+	/**
+	 *
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @return The cached response, or null if there is no valid response for the key
+	 */
+	public JavaScriptObject get(String key){
+		Entry entry = entries.get(key);
+		if ( entry == null ){
+			misses++;
+			return null;
+		}//else
+		if ( entry.expiresAt <= Duration.currentTimeMillis() ){
+			misses++;
+			return null;
+		}//else
+		hits++;
+		return entry.response;
+	}
+
+	/**
+	 * Looks up the last response stored for the key, even if its time-to-live has elapsed.
+	 * Lookups of stale responses are not counted as hits or misses.
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @return The last response stored, or null if there is none
+	 */
+	public JavaScriptObject getStale(String key){
+		Entry entry = entries.get(key);
+		return entry == null ? null : entry.response;
+	}
+
+	/**
+	 *
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @return The digest of the last response stored for the key, or null if there is none
+	 */
+	public ResponseDigest getDigest(String key){
+		Entry entry = entries.get(key);
+		return entry == null ? null : entry.digest;
+	}
+
+	/**
+	 * Stores a response, evicting the least recently used ones if the budget is exceeded
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @param response The response to be cached
+	 * @param ttl The time-to-live of the response (in seconds): with non positive values the response is
+	 * 				immediately stale, and so it's only kept to be served to requests in stale-while-revalidate mode
+	 * @return true <=> the response has been stored
+	 */
+	public boolean put(String key, JavaScriptObject response, int ttl){
+		return put(key, response, ttl, ResponseDigest.of(response));
+	}
+
+	/**
+	 * Stores a response whose digest has already been computed (f.i. to store it in several caches)
+	 * @param key The cache key of the request (see AJAXRequest.getCacheKey())
+	 * @param response The response to be cached
+	 * @param ttl The time-to-live of the response (in seconds), as in put(String, JavaScriptObject, int)
+	 * @param digest The response's size and fingerprint
+	 * @return true <=> the response has been stored
+	 */
+	public boolean put(String key, JavaScriptObject response, int ttl, ResponseDigest digest){
+		remove(key);
+
+		Entry entry = new Entry(response, Duration.currentTimeMillis() + Math.max(ttl, 0) * 1000., digest);
+		if ( entry.bytes > maxBytes ){
+			return false;	//Would evict everything else and still not fit
+		}//else
+		entries.put(key, entry);
+		bytes += entry.bytes;
+		evict();
+		return true;
+	}
+
+	/**
+	 * Removes a response from the cache
+	 * @param key The cache key of the request
+	 * @return true <=> there was a response for the key
+	 */
+	public boolean remove(String key){
+		Entry entry = entries.remove(key);
+		if ( entry == null ){
+			return false;
+		}//else
+		bytes -= entry.bytes;
+		return true;
+	}
+
+	/**
+	 * Removes every response from the cache (statistics are not reset)
+	 */
+	public void clear(){
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Evicts the least recently used responses until the cache is within its budget
+	 */
+	private void evict(){
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while ( (entries.size() > maxEntries || bytes > maxBytes) && it.hasNext() ){
+			Entry eldest = it.next().getValue();
+			it.remove();
+			bytes -= eldest.bytes;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Normalizes an url so that equivalent urls share the same cache key: scheme and host are lower-cased,
+	 * the fragment is dropped and the query parameters are sorted
+	 * @param url The url to be normalized
+	 * @return The normalized url
+	 */
+	public static String normalizeUrl(String url){
+		String u = url.trim();
+		int fragment = u.indexOf('#');
+		if ( fragment >= 0 ){
+			u = u.substring(0, fragment);
+		}
+
+		String head = "";
+		int schemeEnd = u.indexOf("://");
+		if ( schemeEnd > 0 ){
+			int authorityEnd = schemeEnd + 3;
+			while ( authorityEnd < u.length() && u.charAt(authorityEnd) != '/' && u.charAt(authorityEnd) != '?' ){
+				authorityEnd++;
+			}
+			head = u.substring(0, authorityEnd).toLowerCase();
+			u = u.substring(authorityEnd);
+		}
+
+		int query = u.indexOf('?');
+		if ( query < 0 ){
+			return head + u;
+		}//else
+		ArrayList<String> params = new ArrayList<String>();
+		for ( String param : u.substring(query + 1).split("&") ){
+			if ( param.length() > 0 ){
+				params.add(param);
+			}
+		}
+		Collections.sort(params);
+
+		StringBuilder normalized = new StringBuilder(head).append(u.substring(0, query + 1));
+		for ( int i = 0; i < params.size(); i++ ){
+			if ( i > 0 ){
+				normalized.append('&');
+			}
+			normalized.append(params.get(i));
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 *
+	 * @return How many responses are currently cached
+	 */
+	public int size(){
+		return entries.size();
+	}
+
+	/**
+	 *
+	 * @return The approximate size (in bytes) of the responses currently cached
+	 */
+	public int getBytes(){
+		return bytes;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Sets the maximum number of responses kept: if the cache is larger, LRU entries are evicted right away
+	 * @param _maxEntries The value to be set (must be >= 1)
+	 */
+	public void setMaxEntries(int _maxEntries) throws IllegalArgumentException{
+		if ( _maxEntries < 1 ){
+			throw new IllegalArgumentException();
+		}
+		maxEntries = _maxEntries;
+		evict();
+	}
+
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the maximum (approximate) size in bytes of the responses kept: if the cache is larger, LRU entries are evicted right away
+	 * @param _maxBytes The value to be set (must be >= 1)
+	 */
+	public void setMaxBytes(int _maxBytes) throws IllegalArgumentException{
+		if ( _maxBytes < 1 ){
+			throw new IllegalArgumentException();
+		}
+		maxBytes = _maxBytes;
+		evict();
+	}
+
+	/**
+	 *
+	 * @return How many lookups have found a valid response
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 *
+	 * @return How many lookups haven't found a valid response
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 *
+	 * @return How many responses have been evicted to stay within the budget (expired responses are not counted)
+	 */
+	public int getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Resets hits, misses and evictions counters
+	 */
+	public void resetStatistics(){
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+}
@@ -0,0 +1,181 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * The digest of a response: its approximate size in bytes, which keeps the caches within their budget,
+ * and a fingerprint, which tells whether a fresh response differs from a stale one.
+ *
+ * Neither needs the response to be serialized. The size is estimated on a sample of the response: arrays (and
+ * objects) with more than SAMPLES elements are only sampled, at evenly spaced positions, and their size is
+ * extrapolated from the samples, so its cost is bounded by the shape of the response rather than by its size.
+ * The fingerprint, instead, hashes every value of the response, so that any change is detected: being linear
+ * in the size of the response, it's only computed (once) when it's first asked for.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public final class ResponseDigest {
+
+	/**
+	 * How many elements of each array (or object) are walked to estimate the size of a response
+	 */
+	public static final int SAMPLES = 32;
+
+	private final JavaScriptObject response;
+	private final int bytes;
+	private boolean hashed = false;
+	private int hash;
+
+	/**
+	 *
+	 * @param _response The response
+	 * @param _bytes The approximate size of the response, in bytes
+	 */
+	private ResponseDigest(JavaScriptObject _response, int _bytes){
+		response = _response;
+		bytes = _bytes;
+	}
+
+	/**
+	 * Digests a response, estimating its size
+	 * @param response
+	 * @return The response's digest
+	 */
+	public static ResponseDigest of(JavaScriptObject response){
+		return new ResponseDigest(response, estimateBytes(response, SAMPLES));
+	}
+
+	/**
+	 * Digests a response whose size is already known (f.i. the length of the body it was parsed from)
+	 * @param response
+	 * @param length The number of characters of the response's JSON text
+	 * @return The response's digest
+	 */
+	public static ResponseDigest of(JavaScriptObject response, int length){
+		return new ResponseDigest(response, 2 * length);	//2 bytes per character
+	}
+
+	/**
+	 * Estimates the size (in bytes) of a value's JSON text, walking a sample of its elements
+	 * @param response The value
+	 * @param samples How many elements of each array (or object) are walked
+	 * @return The estimated size
+	 */
+	private static native int estimateBytes(JavaScriptObject response, int samples) /*-{
+		var visit = function(value, depth) {
+			if (value === null || value === undefined) {
+				return 8;
+			}
+			switch (typeof value) {
+			case "string":
+				return 2 * value.length + 4;
+			case "number":
+				return 16;
+			case "boolean":
+				return 10;
+			case "object":
+				if (depth > 64) {
+					return 0;
+				}
+				var isArray = Array.isArray ? Array.isArray(value) : value instanceof Array;
+				var keys = isArray ? null : Object.keys(value);
+				var n = isArray ? value.length : keys.length;
+				var taken = Math.min(n, samples);
+				var bytes = 0;
+				for (var k = 0; k < taken; k++) {
+					var i = taken > 1 ? Math.round(k * (n - 1) / (taken - 1)) : 0;
+					if (isArray) {
+						bytes += visit(value[i], depth + 1) + 2;
+					} else {
+						bytes += 2 * keys[i].length + 6 + visit(value[keys[i]], depth + 1);
+					}
+				}
+				return 4 + (taken > 0 ? Math.round(bytes * n / taken) : 0);
+			default:
+				return 0;
+			}
+		};
+		return Math.min(visit(response, 0), 2147483647);
+	}-*/;
+
+	/**
+	 * Hashes every value of a response (keys included, in their order), in a single walk
+	 * @param response
+	 * @return The response's fingerprint
+	 */
+	private static native int hash(JavaScriptObject response) /*-{
+		var hash = 17;
+		var mix = function(value) {
+			hash = (hash * 31 + value) | 0;
+		};
+		var mixString = function(s) {
+			mix(s.length);
+			for (var i = 0; i < s.length; i++) {
+				hash = (hash * 31 + s.charCodeAt(i)) | 0;
+			}
+		};
+		var visit = function(value, depth) {
+			if (value === null || value === undefined) {
+				mix(0);
+				return;
+			}
+			switch (typeof value) {
+			case "string":
+				mix(3);
+				mixString(value);
+				return;
+			case "number":
+				mix(4);
+				mixString("" + value);
+				return;
+			case "boolean":
+				mix(value ? 1 : 2);
+				return;
+			case "object":
+				if (depth > 64) {
+					return;
+				}
+				var isArray = Array.isArray ? Array.isArray(value) : value instanceof Array;
+				if (isArray) {
+					mix(-value.length);
+					for (var i = 0; i < value.length; i++) {
+						visit(value[i], depth + 1);
+					}
+				} else {
+					var keys = Object.keys(value);
+					mix(keys.length);
+					for (var k = 0; k < keys.length; k++) {
+						mixString(keys[k]);
+						visit(value[keys[k]], depth + 1);
+					}
+				}
+				return;
+			default:
+				return;
+			}
+		};
+		visit(response, 0);
+		return hash;
+	}-*/;
+
+	/**
+	 *
+	 * @return The approximate size of the response, in bytes
+	 */
+	public int getBytes() {
+		return bytes;
+	}
+
+	/**
+	 *
+	 * @return The fingerprint of the response (hashed the first time it's asked for)
+	 */
+	public int getHash() {
+		if ( !hashed ){
+			hash = hash(response);
+			hashed = true;
+		}
+		return hash;
+	}
+}
@@ -1,5 +1,5 @@
 package com.smartgwt.extensions.utility.requestrouter;
 
 public enum ResponseType {
-	JAVASCRIPT_OBJECT, JSARRAY, STRING_JSON, JSON_OBJECT, JSON_ARRAY
+	JAVASCRIPT_OBJECT, JSARRAY, STRING_JSON, JSON_OBJECT, JSON_ARRAY, STREAM, TYPED_ARRAY
 }
@@ -0,0 +1,101 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * A router-wide limit on retries, so that they can't amplify an outage: retries can be at most a given ratio of
+ * the requests submitted.
+ * 
+ * Each new request submitted deposits ratio tokens in the budget, and each retry withdraws a whole token: when
+ * there are no tokens left, failed requests are not retried, whatever their RetryPolicy says.
+ * The balance is capped at maxBalance tokens (which is also the initial balance), so that a long quiet period
+ * can't build up a burst of retries.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class RetryBudget {
+
+	public static final double DEFAULT_RATIO = 0.1;
+	public static final int DEFAULT_MAX_BALANCE = 10;
+	
+	private final double ratio;
+	private final int maxBalance;
+	
+	private double balance;
+	
+	private int retries = 0;
+	private int rejectedRetries = 0;
+	
+	/**
+	 * Creates a budget allowing retries for 10% of the requests
+	 */
+	public RetryBudget(){
+		this(DEFAULT_RATIO, DEFAULT_MAX_BALANCE);
+	}
+	
+	/**
+	 * 
+	 * @param _ratio The maximum ratio between retries and requests submitted (must be >= 0)
+	 * @param _maxBalance The maximum (and initial) number of retries which can be made in a row (must be >= 0)
+	 */
+	public RetryBudget(double _ratio, int _maxBalance) throws IllegalArgumentException{
+		if ( _ratio < 0 || _maxBalance < 0 ){
+			throw new IllegalArgumentException();
+		}
+		ratio = _ratio;
+		maxBalance = _maxBalance;
+		balance = _maxBalance;
+	}
+	
+	/**
+	 * Called for each new request submitted to the router
+	 */
+	public void deposit(){
+		balance = Math.min(maxBalance, balance + ratio);
+	}
+	
+	/**
+	 * Called before each retry
+	 * @return true <=> there are tokens left, and so the retry can be made
+	 */
+	public boolean withdraw(){
+		if ( balance < 1 ){
+			rejectedRetries++;
+			return false;
+		}//else
+		balance -= 1;
+		retries++;
+		return true;
+	}
+
+	public double getRatio() {
+		return ratio;
+	}
+
+	public int getMaxBalance() {
+		return maxBalance;
+	}
+
+	/**
+	 * 
+	 * @return How many retries can currently be made
+	 */
+	public double getBalance() {
+		return balance;
+	}
+
+	/**
+	 * 
+	 * @return How many retries the budget has allowed
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * 
+	 * @return How many retries the budget has prevented
+	 */
+	public int getRejectedRetries() {
+		return rejectedRetries;
+	}
+}
@@ -0,0 +1,90 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.EnumSet;
+
+/**
+ * Declares if, and how, a failed AJAXRequest must be sent again by the router before its handler is notified of
+ * the failure.
+ * 
+ * A request is retried up to maxAttempts - 1 times, and only for retryable outcomes: HTTP client errors (4xx status,
+ * except 408 and 429) are never retried, since sending the same request again won't change them.
+ * Before each retry the request waits a random time between 0 and min(maxDelay, baseDelay * 2^(retry - 1))
+ * milliseconds (exponential backoff with full jitter), so that the retries of many requests failed together are
+ * spread over time. While waiting, the request doesn't hold any slot.
+ * 
+ * Retries are also subject to the router's RetryBudget.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class RetryPolicy {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final int DEFAULT_BASE_DELAY = 200;
+	public static final int DEFAULT_MAX_DELAY = 10000;
+	
+	private final int maxAttempts;
+	private final int baseDelay;
+	private final int maxDelay;
+	private final EnumSet<RequestOutcome> retryableOutcomes;
+	
+	/**
+	 * Creates a policy with the default parameters, retrying both failures and timeouts
+	 */
+	public RetryPolicy(){
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, EnumSet.of(RequestOutcome.FAILURE, RequestOutcome.TIMEOUT));
+	}
+	
+	/**
+	 * 
+	 * @param _maxAttempts How many times, at most, the request is sent, including the first one (must be >= 1)
+	 * @param _baseDelay The upper bound (in milliseconds) of the wait before the first retry (must be >= 0)
+	 * @param _maxDelay The upper bound (in milliseconds) of the wait before any retry (must be >= baseDelay)
+	 * @param _retryableOutcomes The outcomes after which the request can be retried
+	 */
+	public RetryPolicy(int _maxAttempts, int _baseDelay, int _maxDelay, EnumSet<RequestOutcome> _retryableOutcomes) throws IllegalArgumentException{
+		if ( _maxAttempts < 1 || _baseDelay < 0 || _maxDelay < _baseDelay ){
+			throw new IllegalArgumentException();
+		}
+		maxAttempts = _maxAttempts;
+		baseDelay = _baseDelay;
+		maxDelay = _maxDelay;
+		retryableOutcomes = EnumSet.copyOf(_retryableOutcomes);
+		retryableOutcomes.remove(RequestOutcome.SUCCESS);
+	}
+	
+	/**
+	 * 
+	 * @param request A request which has just failed
+	 * @return true <=> the policy allows the request to be sent again
+	 */
+	public boolean isRetryable(@SuppressWarnings("rawtypes") AJAXRequest request){
+		if ( request.getAttempts() >= maxAttempts || !retryableOutcomes.contains(request.getOutcome()) ){
+			return false;
+		}//else
+		int status = request.getHttpStatus();
+		return status < 400 || status >= 500 || status == 408 || status == 429;
+	}
+	
+	/**
+	 * 
+	 * @param retry The number of the retry (1 for the first one)
+	 * @return The time (in milliseconds) to wait before the retry
+	 */
+	public int getDelay(int retry){
+		double cap = Math.min(maxDelay, baseDelay * Math.pow(2, retry - 1));
+		return (int) (Math.random() * cap);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public int getBaseDelay() {
+		return baseDelay;
+	}
+
+	public int getMaxDelay() {
+		return maxDelay;
+	}
+}
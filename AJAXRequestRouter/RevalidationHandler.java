@@ -0,0 +1,14 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**Interface to be implemented, along with one of the response handler interfaces, by handlers of requests in
+ * stale-while-revalidate mode which want to know when the stale response they were served has been replaced.
+ * 
+ * The fresh response is delivered through the usual onSuccess method, and then onRevalidated is called: 
+ * both happen only if the fresh response differs from the stale one.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface RevalidationHandler {
+	public  void onRevalidated( @SuppressWarnings("rawtypes") AJAXRequest request );
+}
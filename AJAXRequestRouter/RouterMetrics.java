@@ -0,0 +1,285 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.json.client.JSONNumber;
+import com.google.gwt.json.client.JSONObject;
+
+/**
+ * The metrics of an AJAXRequestRouter, which can be polled at any time or exported as JSON (f.i. to be sent
+ * to a monitoring service):
+ * - gauges, read from the router when polled: requests waiting for a slot, requests held by the idle lane,
+ *   and requests in flight in the standard and in the urgent slots;
+ * - counters: requests submitted, network calls completed (with any outcome), of which failed and timed out,
+ *   requests which had to wait for a slot, requests failed fast by a circuit breaker, retries, cancellations
+ *   and requests shed because the waiting queue was full;
+ * - latency histograms, by priority: time spent waiting for a slot, and time spent on the network.
+ * 
+ * Updating the metrics takes constant time and doesn't allocate memory.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class RouterMetrics {
+
+	private final AJAXRequestRouter router;
+	
+	private int submitted = 0;
+	private int completed = 0;
+	private int failed = 0;
+	private int timedOut = 0;
+	private int queueFull = 0;
+	private int rejected = 0;
+	private int retried = 0;
+	private int cancelled = 0;
+	private int shed = 0;
+	
+	private final LatencyHistogram[] queueWait = new LatencyHistogram[RequestPriority.values().length];
+	private final LatencyHistogram[] networkTime = new LatencyHistogram[RequestPriority.values().length];
+	
+	/**
+	 * 
+	 * @param _router The router whose metrics are collected, and whose queues are read for the gauges
+	 */
+	protected RouterMetrics(AJAXRequestRouter _router){
+		router = _router;
+		for ( int i = 0; i < queueWait.length; i++ ){
+			queueWait[i] = new LatencyHistogram();
+			networkTime[i] = new LatencyHistogram();
+		}
+	}
+	
+	protected void onSubmitted(){
+		submitted++;
+	}
+	
+	protected void onQueueFull(){
+		queueFull++;
+	}
+	
+	protected void onRejected(){
+		rejected++;
+	}
+	
+	protected void onRetried(){
+		retried++;
+	}
+	
+	protected void onCancelled(){
+		cancelled++;
+	}
+	
+	protected void onShed(){
+		shed++;
+	}
+	
+	/**
+	 * Records the time a request has waited for its slot, since it was handed to the router
+	 * @param priority The priority of the request
+	 * @param millis
+	 */
+	protected void onStarted(RequestPriority priority, double millis){
+		queueWait[priority.ordinal()].record(millis);
+	}
+	
+	/**
+	 * Records the end of a network call
+	 * @param priority The priority of the request
+	 * @param outcome How the call has ended
+	 * @param millis How long the call has taken
+	 */
+	protected void onCompleted(RequestPriority priority, RequestOutcome outcome, double millis){
+		completed++;
+		if ( outcome == RequestOutcome.FAILURE ){
+			failed++;
+		}else if ( outcome == RequestOutcome.TIMEOUT ){
+			timedOut++;
+		}
+		networkTime[priority.ordinal()].record(millis);
+	}
+	
+	/**
+	 * 
+	 * @return How many requests are waiting for a slot
+	 */
+	public int getWaitingRequests(){
+		return router.getWaitingRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @return How many LOW priority requests are held by the idle lane
+	 */
+	public int getIdleRequests(){
+		return router.getIdleRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @return How many requests are in flight in the standard slots
+	 */
+	public int getStartedRequests(){
+		return router.getStartedRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @return How many requests are in flight in the urgent slots
+	 */
+	public int getUrgentRequests(){
+		return router.getUrgentRequestsCount();
+	}
+	
+	/**
+	 * 
+	 * @return How many requests have been submitted to the router (including those served from the cache or coalesced)
+	 */
+	public int getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * 
+	 * @return How many network calls have ended, with any outcome (each retry and each batch is a call)
+	 */
+	public int getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * 
+	 * @return How many network calls have failed, timeouts excluded
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * 
+	 * @return How many network calls have expired
+	 */
+	public int getTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * 
+	 * @return How many requests couldn't be started right away, and had to wait for a slot
+	 */
+	public int getQueueFull() {
+		return queueFull;
+	}
+
+	/**
+	 * 
+	 * @return How many requests have been failed fast by a circuit breaker
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * 
+	 * @return How many times failed requests have been scheduled to be sent again
+	 */
+	public int getRetried() {
+		return retried;
+	}
+
+	/**
+	 * 
+	 * @return How many requests have been cancelled after being sent
+	 */
+	public int getCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * 
+	 * @return How many requests have been shed because the waiting queue was full
+	 */
+	public int getShed() {
+		return shed;
+	}
+	
+	/**
+	 * 
+	 * @param priority
+	 * @return The histogram of the time (in milliseconds) requests with the given priority have waited before being started
+	 */
+	public LatencyHistogram getQueueWait(RequestPriority priority){
+		return queueWait[priority.ordinal()];
+	}
+	
+	/**
+	 * 
+	 * @param priority
+	 * @return The histogram of the time (in milliseconds) network calls with the given priority have taken
+	 */
+	public LatencyHistogram getNetworkTime(RequestPriority priority){
+		return networkTime[priority.ordinal()];
+	}
+	
+	/**
+	 * Resets the histograms of the time requests have waited before being started
+	 */
+	public void resetQueueWait(){
+		for ( LatencyHistogram histogram : queueWait ){
+			histogram.reset();
+		}
+	}
+	
+	/**
+	 * Resets every counter and histogram (gauges always reflect the router's current state)
+	 */
+	public void reset(){
+		submitted = 0;
+		completed = 0;
+		failed = 0;
+		timedOut = 0;
+		queueFull = 0;
+		rejected = 0;
+		retried = 0;
+		cancelled = 0;
+		shed = 0;
+		resetQueueWait();
+		for ( LatencyHistogram histogram : networkTime ){
+			histogram.reset();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return A snapshot of all the metrics: {"gauges": {...}, "counters": {...}, "queueWait": {"URGENT": {...}, ...}, "networkTime": {...}}
+	 */
+	public JSONObject toJSON(){
+		JSONObject gauges = new JSONObject();
+		gauges.put("waiting", new JSONNumber(getWaitingRequests()));
+		gauges.put("idle", new JSONNumber(getIdleRequests()));
+		gauges.put("started", new JSONNumber(getStartedRequests()));
+		gauges.put("urgent", new JSONNumber(getUrgentRequests()));
+		
+		JSONObject counters = new JSONObject();
+		counters.put("submitted", new JSONNumber(submitted));
+		counters.put("completed", new JSONNumber(completed));
+		counters.put("failed", new JSONNumber(failed));
+		counters.put("timedOut", new JSONNumber(timedOut));
+		counters.put("queueFull", new JSONNumber(queueFull));
+		counters.put("rejected", new JSONNumber(rejected));
+		counters.put("retried", new JSONNumber(retried));
+		counters.put("cancelled", new JSONNumber(cancelled));
+		counters.put("shed", new JSONNumber(shed));
+		
+		JSONObject waits = new JSONObject();
+		JSONObject times = new JSONObject();
+		for ( RequestPriority priority : RequestPriority.values() ){
+			waits.put(priority.name(), queueWait[priority.ordinal()].toJSON());
+			times.put(priority.name(), networkTime[priority.ordinal()].toJSON());
+		}
+		
+		JSONObject json = new JSONObject();
+		json.put("gauges", gauges);
+		json.put("counters", counters);
+		json.put("queueWait", waits);
+		json.put("networkTime", times);
+		return json;
+	}
+}
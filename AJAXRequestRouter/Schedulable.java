@@ -0,0 +1,40 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * What a RequestScheduler needs to know about the requests it schedules.
+ * 
+ * NOTE: This interface, like the whole scheduling core (RequestScheduler, SlotPool, IndexedRequestQueue and the
+ * SchedulingPolicy implementations), must not depend on GWT client classes, so that the core can also run on a plain JVM.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface Schedulable {
+	
+	/**
+	 * 
+	 * @return The unique ID of the request (IDs grow with creation time)
+	 */
+	public int getID();
+	
+	public RequestPriority getPriority();
+	
+	/**
+	 * 
+	 * @return The origin of the request, identifying the SlotPool it belongs to
+	 */
+	public String getHost();
+	
+	/**
+	 * 
+	 * @return The absolute time (in milliseconds) when the request was submitted
+	 */
+	public double getEnqueuedAt();
+	
+	/**
+	 * 
+	 * @return The absolute time (in milliseconds) by which the request should be completed, according to its timeout
+	 * 			(Double.MAX_VALUE if it never expires: see SchedulingPolicy.dueAt)
+	 */
+	public double getDueAt();
+}
@@ -0,0 +1,54 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.Comparator;
+
+/**
+ * The policy by which a RequestScheduler chooses which waiting request gets the next free slot: it orders the
+ * waiting queues (and the heads of the queues of different hosts), and it is told whenever a request enters or
+ * leaves a waiting queue, so that it can keep per-request state (f.i. virtual times).
+ * 
+ * Built-in policies:
+ * - PriorityAging: strict priority (then FIFO), optionally letting the priority of waiting requests rise with time;
+ * - EarliestDeadlineFirst: the request which is due first, according to its timeout;
+ * - WeightedRoundRobin: each priority gets a share of the slots proportional to its weight.
+ * 
+ * The order of two requests MUST NOT change while they are waiting, unless the scheduler is told (see
+ * RequestScheduler.reprioritized and RequestScheduler.reorder): so that enqueuing and dequeuing take O(log n) time.
+ * A policy with state MUST NOT be shared among schedulers.
+ * 
+ * NOTE: This class is part of the scheduling core, which must not depend on GWT.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public abstract class SchedulingPolicy implements Comparator<Schedulable> {
+
+	/**
+	 * The time when a request is due, according to its timeout: requests with a non positive timeout never
+	 * expire, so they are never due (Double.MAX_VALUE)
+	 * @param enqueuedAt The absolute time (in milliseconds) when the request was submitted
+	 * @param timeout The request's timeout (in seconds)
+	 * @return The absolute time (in milliseconds) by which the request should be completed
+	 */
+	public static double dueAt(double enqueuedAt, int timeout){
+		return timeout > 0 ? enqueuedAt + timeout * 1000. : Double.MAX_VALUE;
+	}
+	
+
+	/**
+	 * Called by the scheduler right before a request is put in a waiting queue, and when a waiting request's
+	 * priority has changed
+	 * @param request
+	 */
+	protected void onEnqueued(Schedulable request){
+	}
+	
+	/**
+	 * Called by the scheduler right after a request has left its waiting queue, and when a waiting request's
+	 * priority has changed (before onEnqueued is called again)
+	 * @param request
+	 * @param started true <=> the request has left the queue because it has been given a slot
+	 */
+	protected void onDequeued(Schedulable request, boolean started){
+	}
+}
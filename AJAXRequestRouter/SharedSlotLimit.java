@@ -0,0 +1,126 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.ArrayList;
+
+/**
+ * A cap on the total number of requests in flight across several RequestSchedulers (and so across several
+ * AJAXRequestRouter instances), on top of each one's own limits.
+ * 
+ * Whenever a slot is freed, the schedulers sharing the cap take turns, one request each, starting from a
+ * different scheduler each time, so that a busy scheduler can't keep all the shared slots for itself.
+ * 
+ * NOTE: This class is part of the scheduling core, which must not depend on GWT.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class SharedSlotLimit {
+
+	private int maxContemporaryRequests;
+	
+	private int inUse = 0;
+	
+	private final ArrayList<RequestScheduler<?, ?>> schedulers = new ArrayList<RequestScheduler<?, ?>>();
+	
+	/**
+	 * The scheduler which gets the first turn at the next dispatch
+	 */
+	private int next = 0;
+	
+	/**
+	 * 
+	 * @param _maxContemporaryRequests The maximum number of requests in flight across all the schedulers (must be >= 1)
+	 */
+	public SharedSlotLimit(int _maxContemporaryRequests) throws IllegalArgumentException{
+		setMaxContemporaryRequests(_maxContemporaryRequests);
+	}
+	
+	/**
+	 * Takes a slot, if there is a free one
+	 * @return true <=> a slot has been taken
+	 */
+	protected boolean tryAcquire(){
+		if ( inUse >= maxContemporaryRequests ){
+			return false;
+		}//else
+		inUse++;
+		return true;
+	}
+	
+	/**
+	 * Frees a slot taken through tryAcquire
+	 * NOTE: It doesn't start any waiting request: call dispatch afterwards
+	 */
+	protected void release(){
+		if ( inUse > 0 ){
+			inUse--;
+		}
+	}
+	
+	/**
+	 * Lets a scheduler share the cap
+	 * @param scheduler
+	 * @param inFlight How many requests the scheduler already has in flight: they count against the cap right away
+	 */
+	protected void register(RequestScheduler<?, ?> scheduler, int inFlight){
+		if ( !schedulers.contains(scheduler) ){
+			schedulers.add(scheduler);
+			inUse += inFlight;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param scheduler
+	 * @param inFlight How many requests the scheduler has in flight: their slots are freed
+	 */
+	protected void unregister(RequestScheduler<?, ?> scheduler, int inFlight){
+		if ( schedulers.remove(scheduler) ){
+			inUse = Math.max(0, inUse - inFlight);
+		}
+	}
+	
+	/**
+	 * Starts waiting requests, one per scheduler in turn, as long as there are free slots and any scheduler
+	 * can start one
+	 */
+	public void dispatch(){
+		int n = schedulers.size();
+		if ( n == 0 ){
+			return ;
+		}//else
+		boolean progress = true;
+		while ( progress && inUse < maxContemporaryRequests ){
+			progress = false;
+			for ( int i = 0; i < n && inUse < maxContemporaryRequests; i++ ){
+				if ( schedulers.get((next + i) % n).dispatchOne() ){
+					progress = true;
+				}
+			}
+		}
+		next = (next + 1) % n;
+	}
+	
+	/**
+	 * 
+	 * @return How many requests are in flight across all the schedulers
+	 */
+	public int getInUse() {
+		return inUse;
+	}
+	
+	public int getMaxContemporaryRequests() {
+		return maxContemporaryRequests;
+	}
+
+	/**
+	 * NOTE: It doesn't start any waiting request: call dispatch afterwards
+	 * @param _maxContemporaryRequests The value to be set (must be >= 1)
+	 */
+	public void setMaxContemporaryRequests(int _maxContemporaryRequests) throws IllegalArgumentException{
+		if ( _maxContemporaryRequests < 1 ){
+			throw new IllegalArgumentException();
+		}
+		maxContemporaryRequests = _maxContemporaryRequests;
+	}
+}
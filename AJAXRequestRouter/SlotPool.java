@@ -0,0 +1,115 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * The slot pool of a single origin (scheme + host + port) served by a RequestScheduler.
+ *
+ * Each pool has its own waiting queue and its own limits on concurrent requests and concurrent urgent requests,
+ * so that a slow host can't take all the scheduler's slots and starve requests to other hosts.
+ * Pools don't own any slot: the scheduler's global limit is shared by all of them, so the capacity a host
+ * doesn't use is always available to the others.
+ * By default a pool has no limits of its own, and only the scheduler's global limits apply.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class SlotPool<R extends Schedulable> {
+
+	/**
+	 * Limit value meaning that only the scheduler's global limits apply
+	 */
+	public static final short UNLIMITED = Short.MAX_VALUE;
+
+	private final String host;
+
+	private short maxContemporaryRequests = UNLIMITED;
+	private short maxContemporaryUrgentRequests = UNLIMITED;
+
+	protected final IndexedRequestQueue<R> waiting_queue;
+	protected final HashSet<R> queue_started = new HashSet<R>();
+	protected final HashSet<R> queue_urgent = new HashSet<R>();
+
+	/**
+	 *
+	 * @param _host The origin served by this pool
+	 * @param ordering The ordering of the pool's waiting_queue
+	 */
+	public SlotPool(String _host, Comparator<? super R> ordering){
+		host = _host;
+		waiting_queue = new IndexedRequestQueue<R>(ordering);
+	}
+
+	/**
+	 *
+	 * @return true <=> according to this pool's own limit, one more request can be started
+	 */
+	protected boolean hasFreeSlot(){
+		return queue_started.size() < maxContemporaryRequests;
+	}
+
+	/**
+	 *
+	 * @return true <=> according to this pool's own limit, one more urgent request can be started
+	 */
+	protected boolean hasFreeUrgentSlot(){
+		return queue_urgent.size() < maxContemporaryUrgentRequests;
+	}
+
+	/**
+	 *
+	 * @return The origin served by this pool
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 *
+	 * @return The maximum number of concurrent requests to this host (UNLIMITED <=> only the scheduler's limit applies)
+	 */
+	public short getMaxContemporaryRequests() {
+		return maxContemporaryRequests;
+	}
+
+	protected void setMaxContemporaryRequests(short _maxContemporaryRequests) {
+		maxContemporaryRequests = _maxContemporaryRequests;
+	}
+
+	/**
+	 *
+	 * @return The maximum number of concurrent urgent requests to this host (UNLIMITED <=> only the scheduler's limit applies)
+	 */
+	public short getMaxContemporaryUrgentRequests() {
+		return maxContemporaryUrgentRequests;
+	}
+
+	protected void setMaxContemporaryUrgentRequests(short _maxContemporaryUrgentRequests) {
+		maxContemporaryUrgentRequests = _maxContemporaryUrgentRequests;
+	}
+
+	/**
+	 *
+	 * @return How many requests to this host are waiting for a slot
+	 */
+	public int getWaitingRequestsCount(){
+		return waiting_queue.size();
+	}
+
+	/**
+	 *
+	 * @return How many requests to this host are in flight in the standard slots
+	 */
+	public int getStartedRequestsCount(){
+		return queue_started.size();
+	}
+
+	/**
+	 *
+	 * @return How many requests to this host are in flight in the urgent slots
+	 */
+	public int getUrgentRequestsCount(){
+		return queue_urgent.size();
+	}
+}
@@ -0,0 +1,190 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * The streaming transport: the response body is read while it's downloaded, as NDJSON (one JSON record per
+ * line), and the records are delivered to the request's StreamResponseHandler in chunks of at most the request's
+ * chunk size (see AJAXRequest.setChunkSize), so that the first ones can be used before the download finishes.
+ * 
+ * Where fetch and ReadableStream are available, the body is read a piece at a time, so that memory stays bounded
+ * by the chunk size rather than by the size of the payload; otherwise it falls back to the progress events of
+ * an XMLHttpRequest, whose responseText keeps growing until the download ends.
+ * Like XhrTransport, it needs the server to allow cross-site requests (CORS), and it fails fast on HTTP errors;
+ * a malformed record fails the request.
+ * 
+ * Requests created with a StreamResponseHandler use this transport by default.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class StreamTransport implements RequestTransport {
+
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+	
+	private static StreamTransport transport = null;
+	
+	/**
+	 * 
+	 * @return A reference to the shared StreamTransport object
+	 */
+	public static StreamTransport get(){
+		if (transport == null){
+			transport = new StreamTransport();
+		}
+		return transport;
+	}
+	
+	protected StreamTransport(){
+	}
+	
+	@Override
+	public void send(@SuppressWarnings("rawtypes") AJAXRequest request) {
+		send(request.getUrl(), request.getChunkSize(), request);
+	}
+
+	@Override
+	public void abort(@SuppressWarnings("rawtypes") AJAXRequest request) {
+		abort(request.getTransportHandle());
+		request.setTransportHandle(null);
+	}
+	
+	/**
+	 * Make call to remote server.
+	 *
+	 * @param url
+	 * @param chunkSize
+	 * @param request
+	 */
+	private native void send(String url, int chunkSize, @SuppressWarnings("rawtypes") AJAXRequest request) /*-{
+	 var handle = { done: false, abort: null };
+	 request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setTransportHandle(Lcom/google/gwt/core/client/JavaScriptObject;)(handle);
+	
+	 var partial = "";	// The last line read, until it's known to be complete
+	 var records = [];
+	
+	 var flush = function() {
+	   if (records.length > 0 && !handle.done) {
+	     var chunk = records;
+	     records = [];
+	     request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::handleChunk(Lcom/google/gwt/core/client/JsArray;)(chunk);
+	   }
+	 };
+	 // Parses the complete lines of the text read so far (it throws on malformed records)
+	 var consume = function(text, last) {
+	   var lines = (partial + text).split("\n");
+	   partial = last ? "" : lines.pop();
+	   for (var i = 0; i < lines.length; i++) {
+	     var line = lines[i].replace(/^\s+|\s+$/g, "");
+	     if (line.length > 0) {
+	       records.push(JSON.parse(line));
+	       if (records.length >= chunkSize) {
+	         flush();
+	       }
+	     }
+	   }
+	 };
+	 var complete = function(ok) {
+	   if (handle.done) {
+	     return;
+	   }
+	   if (ok) {
+	     try {
+	       consume("", true);
+	       flush();
+	     } catch (e) {
+	       ok = false;
+	     }
+	   }
+	   handle.done = true;
+	   request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setTransportHandle(Lcom/google/gwt/core/client/JavaScriptObject;)(null);
+	   request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::handleAJAXResponse(Lcom/google/gwt/core/client/JavaScriptObject;)(ok ? {} : null);
+	 };
+	
+	 if ($wnd.fetch && $wnd.ReadableStream && $wnd.TextDecoder && $wnd.AbortController) {
+	   var controller = new $wnd.AbortController();
+	   handle.abort = function() {
+	     controller.abort();
+	   };
+	   $wnd.fetch(url, { signal: controller.signal }).then(function(response) {
+	     request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setHttpStatus(I)(response.status);
+	     if (!response.ok || !response.body) {
+	       controller.abort();
+	       complete(false);
+	       return;
+	     }
+	     var reader = response.body.getReader();
+	     var decoder = new $wnd.TextDecoder();
+	     var pump = function() {
+	       return reader.read().then(function(result) {
+	         if (handle.done) {
+	           return;
+	         }
+	         if (result.done) {
+	           complete(true);
+	           return;
+	         }
+	         try {
+	           consume(decoder.decode(result.value, { stream: true }), false);
+	         } catch (e) {
+	           controller.abort();
+	           complete(false);
+	           return;
+	         }
+	         return pump();
+	       });
+	     };
+	     return pump();
+	   })["catch"](function() {
+	     complete(false);
+	   });
+	 } else {
+	   var xhr = new XMLHttpRequest();
+	   var read = 0;	// How much of responseText has already been consumed
+	   handle.abort = function() {
+	     xhr.onreadystatechange = null;
+	     xhr.abort();
+	   };
+	   xhr.onreadystatechange = function() {
+	     if (xhr.readyState < 2) {
+	       return;
+	     }
+	     request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setHttpStatus(I)(xhr.status);
+	     if (xhr.status < 200 || xhr.status >= 300) {
+	       // Fail fast on HTTP (or network) errors, without waiting for the body
+	       handle.abort();
+	       complete(false);
+	       return;
+	     }
+	     if (xhr.readyState >= 3) {
+	       var text = xhr.responseText;
+	       try {
+	         consume(text.substring(read), false);
+	       } catch (e) {
+	         handle.abort();
+	         complete(false);
+	         return;
+	       }
+	       read = text.length;
+	     }
+	     if (xhr.readyState == 4) {
+	       xhr.onreadystatechange = null;
+	       complete(true);
+	     }
+	   };
+	   xhr.open("GET", url, true);
+	   xhr.send();
+	 }
+	}-*/;
+	
+	/**
+	 * Stops the download, so that the request is never completed
+	 * @param handle The transport's handle of the request, if it is still pending
+	 */
+	private native void abort(JavaScriptObject handle) /*-{
+	 if (handle != null && !handle.done) {
+	   handle.done = true;
+	   handle.abort();
+	 }
+	}-*/;
+}
@@ -0,0 +1,103 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.HashMap;
+
+/**
+ * The weighted-round-robin scheduling policy: while requests of several priorities are waiting, each priority
+ * gets a share of the free slots proportional to its weight, so that lower priorities are slowed down, but never
+ * starved, by higher ones; within the same priority, requests are served in FIFO order.
+ * 
+ * It is implemented as self-clocked fair queuing: each request is tagged, when it is enqueued, with the virtual
+ * time at which its priority class would finish serving it,
+ * 		tag = max(virtual time, tag of the previous request of its class) + 1 / weight of its class
+ * and requests are served by increasing tag, the virtual time being the tag of the last request served.
+ * Tags don't change while requests wait, so enqueuing and dequeuing take O(log n) time.
+ * 
+ * NOTE: This class is part of the scheduling core, which must not depend on GWT.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class WeightedRoundRobin extends SchedulingPolicy {
+
+	/**
+	 * Default weights, by priority: URGENT, HIGH, NORMAL, LOW
+	 */
+	public static final int[] DEFAULT_WEIGHTS = {8, 4, 2, 1};
+	
+	private final int[] weights;
+	
+	private double virtualTime = 0;
+	
+	/**
+	 * The tag of the last request enqueued, by priority
+	 */
+	private final double[] lastTags;
+	
+	private final HashMap<Schedulable, Double> tags = new HashMap<Schedulable, Double>();
+	
+	/**
+	 * Creates a policy with the default weights
+	 */
+	public WeightedRoundRobin(){
+		this(DEFAULT_WEIGHTS);
+	}
+	
+	/**
+	 * 
+	 * @param _weights The weights of the priorities, in the order of RequestPriority (each one must be >= 1)
+	 */
+	public WeightedRoundRobin(int[] _weights) throws IllegalArgumentException{
+		if ( _weights == null || _weights.length != RequestPriority.values().length ){
+			throw new IllegalArgumentException();
+		}
+		for ( int weight : _weights ){
+			if ( weight < 1 ){
+				throw new IllegalArgumentException();
+			}
+		}
+		weights = _weights.clone();
+		lastTags = new double[weights.length];
+	}
+	
+	@Override
+	protected void onEnqueued(Schedulable request) {
+		int p = request.getPriority().ordinal();
+		double tag = Math.max(virtualTime, lastTags[p]) + 1. / weights[p];
+		lastTags[p] = tag;
+		tags.put(request, tag);
+	}
+	
+	@Override
+	protected void onDequeued(Schedulable request, boolean started) {
+		Double tag = tags.remove(request);
+		if ( started && tag != null ){
+			virtualTime = Math.max(virtualTime, tag);
+		}
+	}
+
+	@Override
+	public int compare(Schedulable r1, Schedulable r2) {
+		int c = Double.compare(getTag(r1), getTag(r2));
+		return c != 0 ? c : r1.getID() - r2.getID();
+	}
+	
+	/**
+	 * 
+	 * @param request
+	 * @return The request's tag (if it isn't waiting, it would come after every waiting request)
+	 */
+	private double getTag(Schedulable request){
+		Double tag = tags.get(request);
+		return tag != null ? tag : Double.MAX_VALUE;
+	}
+	
+	/**
+	 * 
+	 * @param priority
+	 * @return The weight of the priority
+	 */
+	public int getWeight(RequestPriority priority){
+		return weights[priority.ordinal()];
+	}
+}
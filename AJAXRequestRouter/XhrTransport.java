@@ -0,0 +1,99 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * The XMLHttpRequest transport: the request's url is fetched as it is (no callback name is appended) and the
+ * response text is parsed as JSON.
+ * Cross-site requests need the remote server to allow them through CORS headers. Unlike JSONP, requests fail
+ * as soon as the server answers with an HTTP error status (without downloading the body), the status is available
+ * through AJAXRequest.getHttpStatus, and aborted requests are really stopped.
+ * 
+ * It can be chosen for a single request (AJAXRequest.setTransport), for a host
+ * (AJAXRequestRouter.setHostTransport) or for all requests (AJAXRequestRouter.setDefaultTransport).
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class XhrTransport implements RequestTransport {
+	
+	private static XhrTransport transport = null;
+	
+	/**
+	 * 
+	 * @return A reference to the shared XhrTransport object
+	 */
+	public static XhrTransport get(){
+		if (transport == null){
+			transport = new XhrTransport();
+		}
+		return transport;
+	}
+	
+	protected XhrTransport(){
+	}
+
+	@Override
+	public void send(@SuppressWarnings("rawtypes") AJAXRequest request) {
+		send(request.getUrl(), request);
+	}
+
+	@Override
+	public void abort(@SuppressWarnings("rawtypes") AJAXRequest request) {
+		abort(request.getTransportHandle());
+		request.setTransportHandle(null);
+	}
+	
+	/**
+	 * Make call to remote server.
+	 *
+	 * @param url
+	 * @param request
+	 */
+	private native void send(String url, @SuppressWarnings("rawtypes") AJAXRequest request) /*-{
+	 var xhr = new XMLHttpRequest();
+	 request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setTransportHandle(Lcom/google/gwt/core/client/JavaScriptObject;)(xhr);
+	
+	 var complete = function(data) {
+	   xhr.onreadystatechange = null;
+	   request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setTransportHandle(Lcom/google/gwt/core/client/JavaScriptObject;)(null);
+	   request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::handleAJAXResponse(Lcom/google/gwt/core/client/JavaScriptObject;)(data);
+	 };
+	
+	 xhr.onreadystatechange = function() {
+	   if (xhr.readyState < 2) {
+	     return;
+	   }
+	   request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setHttpStatus(I)(xhr.status);
+	   if (xhr.status < 200 || xhr.status >= 300) {
+	     // Fail fast on HTTP (or network) errors, without waiting for the body
+	     xhr.onreadystatechange = null;
+	     xhr.abort();
+	     complete(null);
+	   } else if (xhr.readyState == 4) {
+	     var data = null;
+	     request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setResponseLength(I)(xhr.responseText.length);
+	     request.@com.smartgwt.extensions.utility.requestrouter.AJAXRequest::setResponseText(Ljava/lang/String;)(xhr.responseText);
+	     try {
+	       data = JSON.parse(xhr.responseText);
+	     } catch (e) {
+	     }
+	     complete(data);
+	   }
+	 };
+	
+	 xhr.open("GET", url, true);
+	 xhr.send();
+	}-*/;
+	
+	/**
+	 * Stops the download, so that the request is never completed
+	 * @param xhr The XMLHttpRequest of the request, if it is still pending
+	 */
+	private native void abort(JavaScriptObject xhr) /*-{
+	 if (xhr != null) {
+	   xhr.onreadystatechange = null;
+	   xhr.abort();
+	 }
+	}-*/;
+}
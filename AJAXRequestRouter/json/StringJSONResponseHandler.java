@@ -3,15 +3,38 @@
  */
 package com.smartgwt.extensions.utility.requestrouter.json;
 
+import com.google.gwt.core.client.JavaScriptObject;
 import com.smartgwt.extensions.utility.requestrouter.AJAXResponseHandler;
 
 /**Interfaces to be implemented by classes that will handle data response to AJAXRequest, where the data type
  * is String and the string returned is formatted according to JSON specifications.
  * 
+ * Responses arrive already parsed, so the JSON text has to be rebuilt by serializing them: this is done by
+ * onResponse, right before onSuccess is called. Handlers which don't always need the text (f.i. because they
+ * only forward it to storage under some condition) may override onResponse, and call serialize only when needed.
+ * 
  * @author marcellolarocca@gmail.com
  *
  */
 public abstract class StringJSONResponseHandler implements AJAXResponseHandler {
 	
 	public abstract void onSuccess(String jso );
+	
+	/**
+	 * Called by AJAXRequest with the parsed response: by default it serializes the response and passes the
+	 * JSON text to onSuccess
+	 * @param jso The response retrieved
+	 */
+	public void onResponse(JavaScriptObject jso){
+		onSuccess(serialize(jso));
+	}
+	
+	/**
+	 * 
+	 * @param jso A parsed response
+	 * @return The JSON text of the response
+	 */
+	public static native String serialize(JavaScriptObject jso) /*-{
+		return JSON.stringify(jso);
+	}-*/;
 }
@@ -0,0 +1,32 @@
+package com.smartgwt.extensions.utility.requestrouter.overlay;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for the getters of a response shape (see ShapeDecoder), to map them to a property with a different
+ * name than the one derived from the getter (getFoo() and isFoo() read "foo"), or to declare the property as optional.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface JsonProperty {
+	
+	/**
+	 * 
+	 * @return The name of the property read by the getter (empty <=> derived from the getter's name)
+	 */
+	String value() default "";
+	
+	/**
+	 * 
+	 * @return true <=> the property may be missing or null: the getter then returns null (or 0/false for primitives)
+	 */
+	boolean optional() default false;
+}
@@ -0,0 +1,47 @@
+package com.smartgwt.extensions.utility.requestrouter.overlay;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * A decoder for responses with a declared shape, generated at compile time.
+ * 
+ * A shape is an interface made only of getters, whose return types can be String, boolean, int, double, 
+ * JavaScriptObject, another shape, or a TypedArray of another shape; getters may be annotated with JsonProperty.
+ * To get a decoder, declare an interface extending ShapeDecoder<Shape> and create it with GWT.create:
+ * 
+ * 	interface StockDecoder extends ShapeDecoder<Stock> {}
+ * 	StockDecoder decoder = GWT.create(StockDecoder.class);
+ * 
+ * The generator produces an overlay type implementing the shape, whose getters read the properties straight from
+ * the response, and a validator checking that the required properties are there with the right types.
+ * Decoding validates the response and returns it as it is, without copying it or building any tree of objects.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ * @param <T> The shape
+ */
+public interface ShapeDecoder<T> {
+
+	/**
+	 * 
+	 * @param jso A response
+	 * @return true <=> jso is an object matching the shape
+	 */
+	public boolean isValid(JavaScriptObject jso);
+	
+	/**
+	 * 
+	 * @param jso A response
+	 * @return The response itself, seen through the shape
+	 * @throws ClassCastException If the response doesn't match the shape
+	 */
+	public T decode(JavaScriptObject jso) throws ClassCastException;
+	
+	/**
+	 * Validation takes time linear in the size of the array
+	 * @param jso A response
+	 * @return The response itself, seen as an array of the shape
+	 * @throws ClassCastException If the response isn't an array, or any of its elements doesn't match the shape
+	 */
+	public TypedArray<T> decodeArray(JavaScriptObject jso) throws ClassCastException;
+}
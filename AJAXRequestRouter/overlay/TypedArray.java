@@ -0,0 +1,39 @@
+package com.smartgwt.extensions.utility.requestrouter.overlay;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * An overlay type for arrays of a response shape (see ShapeDecoder): unlike JsArray, its elements don't need
+ * to be overlay types themselves, so they can be read through the shape's interface.
+ * 
+ * Instances are obtained from a ShapeDecoder (or from the getters of a shape), which has already validated
+ * the elements.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ * @param <T> The shape of the elements
+ */
+public class TypedArray<T> extends JavaScriptObject {
+
+	protected TypedArray(){
+	}
+	
+	/**
+	 * 
+	 * @param index
+	 * @return The element at position index, seen through its shape (null if index is out of bounds)
+	 */
+	@SuppressWarnings("unchecked")	//The elements have been validated by the decoder
+	public final T get(int index){
+		return (T) get0(index);
+	}
+	
+	public final native int length() /*-{
+	  return this.length;
+	}-*/;
+	
+	private native JavaScriptObject get0(int index) /*-{
+	  var e = this[index];
+	  return e == null ? null : e;
+	}-*/;
+}
@@ -0,0 +1,15 @@
+package com.smartgwt.extensions.utility.requestrouter.overlay;
+
+import com.smartgwt.extensions.utility.requestrouter.AJAXResponseHandler;
+
+/**Interfaces to be implemented by classes that will handle data response to AJAXRequest, where the data
+ * is an array of objects with a declared shape, validated by a ShapeDecoder.
+ * A response which doesn't match the shape is handled as a failure.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface TypedArrayResponseHandler<T> extends AJAXResponseHandler{
+	
+	public abstract void onSuccess(TypedArray<T> records );
+}
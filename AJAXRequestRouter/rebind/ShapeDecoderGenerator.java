@@ -0,0 +1,329 @@
+package com.smartgwt.extensions.utility.requestrouter.rebind;
+
+import java.io.PrintWriter;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.ext.Generator;
+import com.google.gwt.core.ext.GeneratorContext;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.typeinfo.JClassType;
+import com.google.gwt.core.ext.typeinfo.JMethod;
+import com.google.gwt.core.ext.typeinfo.JParameterizedType;
+import com.google.gwt.core.ext.typeinfo.JPrimitiveType;
+import com.google.gwt.core.ext.typeinfo.JType;
+import com.google.gwt.core.ext.typeinfo.TypeOracle;
+import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
+import com.google.gwt.user.rebind.SourceWriter;
+import com.smartgwt.extensions.utility.requestrouter.overlay.JsonProperty;
+import com.smartgwt.extensions.utility.requestrouter.overlay.ShapeDecoder;
+import com.smartgwt.extensions.utility.requestrouter.overlay.TypedArray;
+
+/**
+ * The generator behind GWT.create for the subinterfaces of ShapeDecoder.
+ *
+ * For a decoder of a shape X, it writes:
+ * 1) X_Overlay, a JavaScriptObject implementing X, whose getters read the properties straight from the response,
+ * 	  and whose static isValid/isValidArray methods check a response against the shape;
+ * 2) the same for every shape reachable from X's getters;
+ * 3) the decoder itself, which validates responses and casts them to X_Overlay (or to a TypedArray of it).
+ *
+ * This class runs at compile time only, and so it is excluded from the module's translatable sources.
+ *
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class ShapeDecoderGenerator extends Generator {
+
+	private static final String OVERLAY_SUFFIX = "_Overlay";
+	private static final String DECODER_SUFFIX = "_Impl";
+
+	private static final String JSO_SIGNATURE = "(Lcom/google/gwt/core/client/JavaScriptObject;)";
+
+	/**
+	 * The kinds of properties a shape can have
+	 */
+	private enum Kind { STRING, BOOLEAN, INT, DOUBLE, OBJECT, SHAPE, SHAPE_ARRAY }
+
+	@Override
+	public String generate(TreeLogger logger, GeneratorContext context, String typeName) throws UnableToCompleteException {
+		TypeOracle oracle = context.getTypeOracle();
+		JClassType decoderType = oracle.findType(typeName);
+		if ( decoderType == null || decoderType.isInterface() == null ){
+			logger.log(TreeLogger.ERROR, typeName + " must be an interface extending " + ShapeDecoder.class.getName());
+			throw new UnableToCompleteException();
+		}//else
+		JClassType shape = getTypeArgument(decoderType, ShapeDecoder.class.getName());
+		if ( shape == null || shape.isInterface() == null ){
+			logger.log(TreeLogger.ERROR, typeName + " must extend " + ShapeDecoder.class.getName() + " with an interface as type argument");
+			throw new UnableToCompleteException();
+		}//else
+		generateOverlay(logger, context, shape);
+
+		String packageName = decoderType.getPackage().getName();
+		String simpleName = decoderType.getName().replace('.', '_') + DECODER_SUFFIX;
+		PrintWriter pw = context.tryCreate(logger, packageName, simpleName);
+		if ( pw == null ){
+			return packageName + "." + simpleName;	//Already generated
+		}//else
+		String shapeName = shape.getQualifiedSourceName();
+		String overlayName = getOverlayName(shape);
+
+		ClassSourceFileComposerFactory factory = new ClassSourceFileComposerFactory(packageName, simpleName);
+		factory.addImport(JavaScriptObject.class.getName());
+		factory.addImport(TypedArray.class.getName());
+		factory.addImplementedInterface(decoderType.getQualifiedSourceName());
+		SourceWriter sw = factory.createSourceWriter(context, pw);
+
+		sw.println("public boolean isValid(JavaScriptObject jso) {");
+		sw.indentln("return " + overlayName + ".isValid(jso);");
+		sw.println("}");
+		sw.println();
+		sw.println("public " + shapeName + " decode(JavaScriptObject jso) throws ClassCastException {");
+		sw.indent();
+		sw.println("if ( !" + overlayName + ".isValid(jso) ) {");
+		sw.indentln("throw new ClassCastException();");
+		sw.println("}");
+		sw.println("return jso.<" + overlayName + ">cast();");
+		sw.outdent();
+		sw.println("}");
+		sw.println();
+		sw.println("public TypedArray<" + shapeName + "> decodeArray(JavaScriptObject jso) throws ClassCastException {");
+		sw.indent();
+		sw.println("if ( !" + overlayName + ".isValidArray(jso) ) {");
+		sw.indentln("throw new ClassCastException();");
+		sw.println("}");
+		sw.println("return jso.<TypedArray<" + shapeName + ">>cast();");
+		sw.outdent();
+		sw.println("}");
+		sw.commit(logger);
+
+		return packageName + "." + simpleName;
+	}
+
+	/**
+	 * Writes the overlay type of a shape, and then those of the shapes it refers to
+	 * @param logger
+	 * @param context
+	 * @param shape The shape's interface
+	 * @throws UnableToCompleteException If the shape contains anything but supported getters
+	 */
+	private void generateOverlay(TreeLogger logger, GeneratorContext context, JClassType shape) throws UnableToCompleteException {
+		String packageName = shape.getPackage().getName();
+		String simpleName = shape.getName().replace('.', '_') + OVERLAY_SUFFIX;
+		PrintWriter pw = context.tryCreate(logger, packageName, simpleName);
+		if ( pw == null ){
+			return ;	//Already generated (or being generated, for recursive shapes)
+		}//else
+		TreeLogger shapeLogger = logger.branch(TreeLogger.DEBUG, "Generating the overlay type of " + shape.getQualifiedSourceName());
+		JMethod[] getters = shape.getOverridableMethods();
+
+		ClassSourceFileComposerFactory factory = new ClassSourceFileComposerFactory(packageName, simpleName);
+		factory.addImport(JavaScriptObject.class.getName());
+		factory.setSuperclass(JavaScriptObject.class.getName());
+		factory.addImplementedInterface(shape.getQualifiedSourceName());
+		SourceWriter sw = factory.createSourceWriter(context, pw);
+
+		sw.println("protected " + simpleName + "() {");
+		sw.println("}");
+
+		StringBuilder checks = new StringBuilder();
+		for ( JMethod getter : getters ){
+			JType type = getter.getReturnType();
+			Kind kind = getKind(type);
+			if ( kind == null || getter.getParameters().length > 0 ){
+				shapeLogger.log(TreeLogger.ERROR, shape.getQualifiedSourceName() + "." + getter.getName()
+											+ "() is not a getter of a supported type");
+				throw new UnableToCompleteException();
+			}//else
+			JsonProperty annotation = getter.getAnnotation(JsonProperty.class);
+			boolean optional = annotation != null && annotation.optional();
+			String property = "this[" + quote(getPropertyName(getter, annotation)) + "]";
+			String returnType = type.getParameterizedQualifiedSourceName();
+
+			sw.println();
+			switch ( kind ){
+				case SHAPE :
+					//The overlay is returned from JSNI as its own class, which is then seen through the interface
+					String overlayName = getOverlayName(type.isInterface());
+					sw.println("public final " + returnType + " " + getter.getName() + "() {");
+					sw.indentln("return " + getter.getName() + "0();");
+					sw.println("}");
+					sw.println();
+					sw.println("private native " + overlayName + " " + getter.getName() + "0() /*-{");
+					sw.indentln("var v = " + property + ";");
+					sw.indentln("return v == null ? null : v;");
+					sw.println("}-*/;");
+					break;
+				case BOOLEAN :
+					sw.println("public final native boolean " + getter.getName() + "() /*-{");
+					sw.indentln("return !!" + property + ";");
+					sw.println("}-*/;");
+					break;
+				case INT :
+				case DOUBLE :
+					sw.println("public final native " + returnType + " " + getter.getName() + "() /*-{");
+					sw.indentln("var v = " + property + ";");
+					sw.indentln("return v == null ? 0 : v;");
+					sw.println("}-*/;");
+					break;
+				default :
+					sw.println("public final native " + returnType + " " + getter.getName() + "() /*-{");
+					sw.indentln("var v = " + property + ";");
+					sw.indentln("return v == null ? null : v;");
+					sw.println("}-*/;");
+			}
+
+			String check = getCheck(kind, type);
+			checks.append("  v = o[").append(quote(getPropertyName(getter, annotation))).append("];\n");
+			if ( optional ){
+				checks.append("  if (v != null && !(").append(check).append(")) return false;\n");
+			}else{
+				checks.append("  if (v == null || !(").append(check).append(")) return false;\n");
+			}
+		}
+
+		sw.println();
+		sw.println("public static native boolean isValid(JavaScriptObject o) /*-{");
+		sw.println("  if (o == null || typeof o !== \"object\" || Array.isArray(o)) return false;");
+		sw.println("  var v;");
+		sw.print(checks.toString());
+		sw.println("  return true;");
+		sw.println("}-*/;");
+		sw.println();
+		sw.println("public static native boolean isValidArray(JavaScriptObject a) /*-{");
+		sw.println("  if (!Array.isArray(a)) return false;");
+		sw.println("  for (var i = 0; i < a.length; i++) {");
+		sw.println("    if (!@" + packageName + "." + simpleName + "::isValid" + JSO_SIGNATURE + "(a[i])) return false;");
+		sw.println("  }");
+		sw.println("  return true;");
+		sw.println("}-*/;");
+		sw.commit(shapeLogger);
+
+		//The shapes this one refers to
+		for ( JMethod getter : getters ){
+			JType type = getter.getReturnType();
+			Kind kind = getKind(type);
+			if ( kind == Kind.SHAPE ){
+				generateOverlay(logger, context, type.isInterface());
+			}else if ( kind == Kind.SHAPE_ARRAY ){
+				generateOverlay(logger, context, type.isParameterized().getTypeArgs()[0]);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param type The return type of a getter
+	 * @return The kind of property it reads (null if it's not supported)
+	 */
+	private static Kind getKind(JType type){
+		JPrimitiveType primitive = type.isPrimitive();
+		if ( primitive != null ){
+			if ( primitive == JPrimitiveType.BOOLEAN ){
+				return Kind.BOOLEAN;
+			}else if ( primitive == JPrimitiveType.INT ){
+				return Kind.INT;
+			}else if ( primitive == JPrimitiveType.DOUBLE ){
+				return Kind.DOUBLE;
+			}else{
+				return null;	//long can't cross JSNI, and the others aren't worth it
+			}
+		}//else
+		String name = type.getQualifiedSourceName();
+		if ( name.equals(String.class.getName()) ){
+			return Kind.STRING;
+		}else if ( name.equals(JavaScriptObject.class.getName()) ){
+			return Kind.OBJECT;
+		}//else
+		JParameterizedType parameterized = type.isParameterized();
+		if ( parameterized != null ){
+			if ( parameterized.getBaseType().getQualifiedSourceName().equals(TypedArray.class.getName())
+					&& parameterized.getTypeArgs()[0].isInterface() != null ){
+				return Kind.SHAPE_ARRAY;
+			}//else
+			return null;
+		}//else
+		if ( type.isInterface() != null ){
+			return Kind.SHAPE;
+		}//else
+		return null;
+	}
+
+	/**
+	 *
+	 * @param kind The kind of a property
+	 * @param type The return type of its getter
+	 * @return The JavaScript condition that the (non null) value v of the property must meet
+	 */
+	private static String getCheck(Kind kind, JType type){
+		switch ( kind ){
+			case STRING :
+				return "typeof v === \"string\"";
+			case BOOLEAN :
+				return "typeof v === \"boolean\"";
+			case INT :
+				return "typeof v === \"number\" && v % 1 === 0";
+			case DOUBLE :
+				return "typeof v === \"number\"";
+			case SHAPE :
+				return "@" + getOverlayName(type.isInterface()) + "::isValid" + JSO_SIGNATURE + "(v)";
+			case SHAPE_ARRAY :
+				return "@" + getOverlayName(type.isParameterized().getTypeArgs()[0]) + "::isValidArray" + JSO_SIGNATURE + "(v)";
+			default :
+				return "typeof v === \"object\"";
+		}
+	}
+
+	/**
+	 *
+	 * @param shape A shape's interface
+	 * @return The qualified name of its overlay type
+	 */
+	private static String getOverlayName(JClassType shape){
+		return shape.getPackage().getName() + "." + shape.getName().replace('.', '_') + OVERLAY_SUFFIX;
+	}
+
+	/**
+	 *
+	 * @param getter
+	 * @param annotation The getter's annotation, if any
+	 * @return The name of the property read by the getter
+	 */
+	private static String getPropertyName(JMethod getter, JsonProperty annotation){
+		if ( annotation != null && annotation.value().length() > 0 ){
+			return annotation.value();
+		}//else
+		String name = getter.getName();
+		int prefix = name.startsWith("get") ? 3 : (name.startsWith("is") ? 2 : 0);
+		if ( prefix == 0 || name.length() == prefix || !Character.isUpperCase(name.charAt(prefix)) ){
+			return name;
+		}//else
+		return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+	}
+
+	/**
+	 *
+	 * @param s
+	 * @return s as a JavaScript string literal
+	 */
+	private static String quote(String s){
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 *
+	 * @param type
+	 * @param generic The qualified name of a generic interface
+	 * @return The (first) type argument given to generic among the supertypes of type (null if there is none)
+	 */
+	private static JClassType getTypeArgument(JClassType type, String generic){
+		for ( JClassType supertype : type.getFlattenedSupertypeHierarchy() ){
+			JParameterizedType parameterized = supertype.isParameterized();
+			if ( parameterized != null && parameterized.getBaseType().getQualifiedSourceName().equals(generic) ){
+				return parameterized.getTypeArgs()[0];
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,151 @@
+package com.smartgwt.extensions.utility.requestrouter.storage;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * A PersistentStorage backed by an IndexedDB object store, whose quota is usually much larger than localStorage's.
+ * The database is opened when the storage is created: operations issued before it's open are queued, and if
+ * it can't be opened (IndexedDB missing or disabled) reads find nothing and writes are dropped.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class IndexedDBStorage implements PersistentStorage {
+
+	public static final String DEFAULT_DATABASE = "AJAXRequestRouter";
+	
+	private static final String STORE = "responses";
+	
+	/**
+	 * { db: the open database (null until it's open), queue: operations waiting for it, failed: true <=> it can't be used }
+	 */
+	private final JavaScriptObject state;
+	
+	/**
+	 * 
+	 * @return true <=> IndexedDB is available
+	 */
+	public static native boolean isSupported() /*-{
+	 try {
+	   return !!$wnd.indexedDB;
+	 } catch (e) {
+	   return false;
+	 }
+	}-*/;
+	
+	/**
+	 * Opens the default database
+	 */
+	public IndexedDBStorage(){
+		this(DEFAULT_DATABASE);
+	}
+	
+	/**
+	 * 
+	 * @param database The name of the database (created if it doesn't exist)
+	 */
+	public IndexedDBStorage(String database){
+		state = open(database, STORE);
+	}
+	
+	private static native JavaScriptObject open(String database, String store) /*-{
+	 var state = { db: null, queue: [], failed: false };
+	 var flush = function() {
+	   var queue = state.queue;
+	   state.queue = [];
+	   for (var i = 0; i < queue.length; i++) {
+	     queue[i]();
+	   }
+	 };
+	 var fail = function() {
+	   state.failed = true;
+	   flush();
+	 };
+	 try {
+	   var request = $wnd.indexedDB.open(database, 1);
+	   request.onupgradeneeded = function() {
+	     request.result.createObjectStore(store);
+	   };
+	   request.onsuccess = function() {
+	     state.db = request.result;
+	     flush();
+	   };
+	   request.onerror = request.onblocked = fail;
+	 } catch (e) {
+	   state.failed = true;
+	 }
+	 return state;
+	}-*/;
+	
+	@Override
+	public native void get(String key, StorageCallback callback) /*-{
+	 var state = this.@com.smartgwt.extensions.utility.requestrouter.storage.IndexedDBStorage::state;
+	 var store = @com.smartgwt.extensions.utility.requestrouter.storage.IndexedDBStorage::STORE;
+	 var done = false;
+	 var deliver = $entry(function(value) {
+	   if (done) {
+	     return;
+	   }
+	   done = true;
+	   callback.@com.smartgwt.extensions.utility.requestrouter.storage.StorageCallback::onLoaded(Ljava/lang/String;)(typeof value == "string" ? value : null);
+	 });
+	 var read = function() {
+	   if (state.failed) {
+	     $wnd.setTimeout(function() { deliver(null); }, 0);
+	     return;
+	   }
+	   try {
+	     var request = state.db.transaction(store, "readonly").objectStore(store).get(key);
+	     request.onsuccess = function() {
+	       deliver(request.result);
+	     };
+	     request.onerror = function() {
+	       deliver(null);
+	     };
+	   } catch (e) {
+	     $wnd.setTimeout(function() { deliver(null); }, 0);
+	   }
+	 };
+	 if (state.db == null && !state.failed) {
+	   state.queue.push(read);
+	 } else {
+	   read();
+	 }
+	}-*/;
+
+	@Override
+	public void put(String key, String value) {
+		write(state, STORE, key, value);
+	}
+
+	@Override
+	public void remove(String key) {
+		write(state, STORE, key, null);
+	}
+	
+	/**
+	 * Stores a value, or deletes it if it's null
+	 */
+	private static native void write(JavaScriptObject state, String store, String key, String value) /*-{
+	 var write = function() {
+	   if (state.failed) {
+	     return;
+	   }
+	   try {
+	     var objects = state.db.transaction(store, "readwrite").objectStore(store);
+	     if (value == null) {
+	       objects["delete"](key);
+	     } else {
+	       objects.put(value, key);
+	     }
+	   } catch (e) {
+	     // Quota exceeded or database closed: the value is just not cached
+	   }
+	 };
+	 if (state.db == null && !state.failed) {
+	   state.queue.push(write);
+	 } else {
+	   write();
+	 }
+	}-*/;
+}
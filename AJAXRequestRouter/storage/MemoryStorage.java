@@ -0,0 +1,56 @@
+package com.smartgwt.extensions.utility.requestrouter.storage;
+
+import java.util.HashMap;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+
+/**
+ * A PersistentStorage kept in memory, which doesn't survive page reloads: values are handed out asynchronously,
+ * just like the browser stores do, so it can stand in for them in tests run in a headless browser, or where no
+ * browser store is available.
+ * Sharing the same MemoryStorage between two caches simulates a reload.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class MemoryStorage implements PersistentStorage {
+
+	private final HashMap<String, String> values = new HashMap<String, String>();
+	
+	@Override
+	public void get(String key, final StorageCallback callback) {
+		final String value = values.get(key);
+		Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+			@Override
+			public void execute() {
+				callback.onLoaded(value);
+			}
+		});
+	}
+
+	@Override
+	public void put(String key, String value) {
+		values.put(key, value);
+	}
+
+	@Override
+	public void remove(String key) {
+		values.remove(key);
+	}
+	
+	/**
+	 * 
+	 * @return How many values are stored
+	 */
+	public int size(){
+		return values.size();
+	}
+	
+	/**
+	 * Removes every value
+	 */
+	public void clear(){
+		values.clear();
+	}
+}
@@ -0,0 +1,25 @@
+package com.smartgwt.extensions.utility.requestrouter.storage;
+
+/**Interface to be implemented by the key/value stores backing a PersistentResponseCache (f.i. IndexedDB or
+ * localStorage), which survive page reloads.
+ * 
+ * Reads are asynchronous, so that they never block the UI thread: the callback must be called exactly once,
+ * and never before get has returned. Writes are fire-and-forget: a store which is full or unavailable may
+ * silently drop them, since the cache can always fall back to the network.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface PersistentStorage {
+	
+	/**
+	 * Reads a value
+	 * @param key
+	 * @param callback Called with the value stored for the key (null if there is none, or it can't be read)
+	 */
+	public abstract void get(String key, StorageCallback callback);
+	
+	public abstract void put(String key, String value);
+	
+	public abstract void remove(String key);
+}
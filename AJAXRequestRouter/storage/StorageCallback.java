@@ -0,0 +1,11 @@
+package com.smartgwt.extensions.utility.requestrouter.storage;
+
+/**Interface to be implemented by classes that will receive the values read from a PersistentStorage
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface StorageCallback {
+	
+	public abstract void onLoaded(String value);
+}
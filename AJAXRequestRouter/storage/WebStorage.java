@@ -0,0 +1,65 @@
+package com.smartgwt.extensions.utility.requestrouter.storage;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+
+/**
+ * A PersistentStorage backed by the browser's localStorage.
+ * localStorage itself is synchronous: values are read right away, but handed out asynchronously like any other
+ * PersistentStorage. Its quota is usually around 5MB per origin (strings are stored as UTF-16), so it's only
+ * suitable for small caches: use IndexedDBStorage for larger ones.
+ * Writes exceeding the quota, and any access when localStorage is disabled, are silently ignored.
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public class WebStorage implements PersistentStorage {
+
+	/**
+	 * 
+	 * @return true <=> localStorage is available (it may be disabled, f.i. by privacy settings)
+	 */
+	public static native boolean isSupported() /*-{
+	 try {
+	   return !!$wnd.localStorage;
+	 } catch (e) {
+	   return false;
+	 }
+	}-*/;
+	
+	@Override
+	public void get(String key, final StorageCallback callback) {
+		final String value = getItem(key);
+		Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+			@Override
+			public void execute() {
+				callback.onLoaded(value);
+			}
+		});
+	}
+
+	@Override
+	public native void put(String key, String value) /*-{
+	 try {
+	   $wnd.localStorage.setItem(key, value);
+	 } catch (e) {
+	   // Quota exceeded or storage disabled: the value is just not cached
+	 }
+	}-*/;
+
+	@Override
+	public native void remove(String key) /*-{
+	 try {
+	   $wnd.localStorage.removeItem(key);
+	 } catch (e) {
+	 }
+	}-*/;
+	
+	private static native String getItem(String key) /*-{
+	 try {
+	   return $wnd.localStorage.getItem(key);
+	 } catch (e) {
+	   return null;
+	 }
+	}-*/;
+}
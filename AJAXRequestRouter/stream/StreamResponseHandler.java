@@ -0,0 +1,20 @@
+package com.smartgwt.extensions.utility.requestrouter.stream;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.smartgwt.extensions.utility.requestrouter.AJAXResponseHandler;
+
+/**Interfaces to be implemented by classes that will handle a streamed response to AJAXRequest, where the
+ * data is a sequence of records (objects derived from JavaScriptObject supertype), delivered a chunk at a time
+ * while they are downloaded.
+ * NOTE: onFailure may be called after some chunks have already been delivered
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+public interface StreamResponseHandler<T extends JavaScriptObject> extends AJAXResponseHandler {
+	
+	public abstract void onChunk(JsArray<T> records );
+	
+	public abstract void onComplete();
+}
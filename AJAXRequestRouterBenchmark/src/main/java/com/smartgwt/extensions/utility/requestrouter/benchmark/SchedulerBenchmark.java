@@ -0,0 +1,211 @@
+package com.smartgwt.extensions.utility.requestrouter.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.smartgwt.extensions.utility.requestrouter.Dispatcher;
+import com.smartgwt.extensions.utility.requestrouter.RequestPriority;
+import com.smartgwt.extensions.utility.requestrouter.RequestScheduler;
+import com.smartgwt.extensions.utility.requestrouter.RequestStatus;
+import com.smartgwt.extensions.utility.requestrouter.Schedulable;
+import com.smartgwt.extensions.utility.requestrouter.SlotPool;
+
+/**
+ * Throughput (and, with the gc profiler, allocation per operation) of the RequestScheduler's operations, with
+ * 10, 1k and 100k requests waiting for a slot, spread over HOSTS hosts with random priorities.
+ * 
+ * Each operation leaves the number of waiting requests unchanged, so that every measurement is taken at the
+ * same queue depth:
+ * - submit:		a new request is submitted (and has to wait), and then removed;
+ * - complete:		the oldest started request is completed, which dispatches the next waiting one, and then it's
+ * 					submitted again;
+ * - cancel:		a random waiting request is removed, and then submitted again (so it keeps waiting);
+ * - reprioritize:	a random waiting request gets a new random priority; priorities are restored before each
+ * 					iteration, so that the queue's shape doesn't drift across iterations.
+ * cancel and reprioritize never complete any request, so the requests holding a slot are always the first
+ * MAX_CONTEMPORARY_REQUESTS ones submitted, and only the following ones are picked.
+ * 
+ * Run with:	java -jar target/benchmarks.jar -prof gc	(or through main)
+ * 
+ * @author marcellolarocca@gmail.com
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseSerialGC"})	//A fixed heap and a single GC thread keep the error margins narrow
+public class SchedulerBenchmark {
+
+	private static final int HOSTS = 4;
+	private static final short MAX_CONTEMPORARY_REQUESTS = 6;
+	private static final short MAX_CONTEMPORARY_URGENT_REQUESTS = 1;
+	
+	private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+	
+	private static final double TIMEOUT = 10000;
+	
+	/**
+	 * A request as seen by the scheduler, with no network behind it
+	 */
+	private static final class Job implements Schedulable {
+		private final int id;
+		private final String host;
+		private RequestPriority priority;
+		private final double enqueuedAt;
+		
+		private Job(int _id, String _host, RequestPriority _priority){
+			id = _id;
+			host = _host;
+			priority = _priority;
+			enqueuedAt = _id;
+		}
+
+		@Override
+		public int getID() {
+			return id;
+		}
+
+		@Override
+		public RequestPriority getPriority() {
+			return priority;
+		}
+
+		@Override
+		public String getHost() {
+			return host;
+		}
+
+		@Override
+		public double getEnqueuedAt() {
+			return enqueuedAt;
+		}
+
+		@Override
+		public double getDueAt() {
+			return enqueuedAt + TIMEOUT;
+		}
+	}
+	
+	@Param({"10", "1000", "100000"})
+	private int queued;
+	
+	private RequestScheduler<Job, SlotPool<Job>> scheduler;
+	
+	/**
+	 * The requests holding a slot, oldest first
+	 */
+	private final ArrayDeque<Job> started = new ArrayDeque<Job>();
+	
+	private Job[] jobs;
+	
+	private RequestPriority[] priorities;	//The priority each job was created with
+	
+	private Job extra;	//Submitted and removed by the submit benchmark
+	
+	private final Random random = new Random(42);
+	
+	@Setup(Level.Trial)
+	public void setUp(){
+		started.clear();
+		scheduler = new RequestScheduler<Job, SlotPool<Job>>(new Dispatcher<Job>() {
+			@Override
+			public void start(Job request) {
+				started.addLast(request);
+			}
+		}, null, MAX_CONTEMPORARY_REQUESTS, MAX_CONTEMPORARY_URGENT_REQUESTS) {
+			@Override
+			protected SlotPool<Job> newPool(String host) {
+				return new SlotPool<Job>(host, getOrdering());
+			}
+		};
+		
+		//No urgent requests: they would take the urgent slots, and the number of waiting ones would depend on luck
+		int total = queued + MAX_CONTEMPORARY_REQUESTS;
+		jobs = new Job[total];
+		priorities = new RequestPriority[total];
+		for ( int i = 0; i < total; i++ ){
+			priorities[i] = PRIORITIES[1 + random.nextInt(PRIORITIES.length - 1)];
+			jobs[i] = new Job(i, "http://host" + (i % HOSTS) + ".example.com", priorities[i]);
+			scheduler.submit(jobs[i]);
+		}
+		extra = new Job(total, "http://host0.example.com", RequestPriority.NORMAL);
+	}
+	
+	/**
+	 * Restores the priorities changed by the previous iteration of reprioritize
+	 */
+	@Setup(Level.Iteration)
+	public void resetPriorities(){
+		for ( int i = MAX_CONTEMPORARY_REQUESTS; i < jobs.length; i++ ){
+			if ( jobs[i].priority != priorities[i] ){
+				jobs[i].priority = priorities[i];
+				scheduler.reprioritized(jobs[i]);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return A random job among those waiting for a slot
+	 */
+	private Job randomWaitingJob(){
+		return jobs[MAX_CONTEMPORARY_REQUESTS + random.nextInt(jobs.length - MAX_CONTEMPORARY_REQUESTS)];
+	}
+	
+	@Benchmark
+	public boolean submit(){
+		scheduler.submit(extra);
+		return scheduler.remove(extra);
+	}
+	
+	@Benchmark
+	public boolean complete(){
+		Job done = started.pollFirst();
+		scheduler.release(done);
+		scheduler.dispatch();
+		return scheduler.submit(done);
+	}
+	
+	@Benchmark
+	public boolean cancel(){
+		Job job = randomWaitingJob();
+		scheduler.remove(job);
+		return scheduler.submit(job);
+	}
+	
+	@Benchmark
+	public RequestStatus reprioritize(){
+		Job job = randomWaitingJob();
+		job.priority = PRIORITIES[1 + random.nextInt(PRIORITIES.length - 1)];
+		return scheduler.reprioritized(job);
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(SchedulerBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,94 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class IndexedRequestQueueTest {
+
+	private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+	
+	@Test
+	public void pollsInPriorityThenIdOrder(){
+		IndexedRequestQueue<TestRequest> queue = new IndexedRequestQueue<TestRequest>();
+		TestRequest low = new TestRequest(1, "", RequestPriority.LOW);
+		TestRequest high = new TestRequest(2, "", RequestPriority.HIGH);
+		TestRequest normal = new TestRequest(3, "", RequestPriority.NORMAL);
+		TestRequest high2 = new TestRequest(4, "", RequestPriority.HIGH);
+		queue.add(low);
+		queue.add(high);
+		queue.add(normal);
+		queue.add(high2);
+		assertFalse(queue.add(high));
+		assertSame(high, queue.poll());
+		assertSame(high2, queue.poll());
+		assertSame(normal, queue.poll());
+		assertSame(low, queue.poll());
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void removeAndUpdateOfAbsentRequestsFail(){
+		IndexedRequestQueue<TestRequest> queue = new IndexedRequestQueue<TestRequest>();
+		TestRequest request = new TestRequest(1, "", RequestPriority.LOW);
+		assertFalse(queue.remove(request));
+		assertFalse(queue.update(request));
+		queue.add(request);
+		//A different object with the same ID is not the queued request
+		TestRequest other = new TestRequest(1, "", RequestPriority.LOW);
+		assertFalse(queue.contains(other));
+		assertFalse(queue.remove(other));
+		assertTrue(queue.remove(request));
+		assertTrue(queue.isEmpty());
+	}
+	
+	/**
+	 * Random removals and priority changes, checked against a TreeSet with the same ordering
+	 */
+	@Test
+	public void randomRemovalsAndUpdatesKeepTheHeapValid(){
+		Random random = new Random(7);
+		IndexedRequestQueue<TestRequest> queue = new IndexedRequestQueue<TestRequest>();
+		TreeSet<TestRequest> expected = new TreeSet<TestRequest>(IndexedRequestQueue.PRIORITY_ORDER);
+		ArrayList<TestRequest> requests = new ArrayList<TestRequest>();
+		for ( int i = 0; i < 1000; i++ ){
+			TestRequest request = new TestRequest(i, "", PRIORITIES[random.nextInt(PRIORITIES.length)]);
+			requests.add(request);
+			queue.add(request);
+			expected.add(request);
+		}
+		for ( int step = 0; step < 5000; step++ ){
+			TestRequest request = requests.get(random.nextInt(requests.size()));
+			switch ( random.nextInt(3) ){
+				case 0 :
+					assertEquals(expected.remove(request), queue.remove(request));
+					break;
+				case 1 :
+					boolean queued = expected.remove(request);
+					request.priority = PRIORITIES[random.nextInt(PRIORITIES.length)];
+					if ( queued ){
+						expected.add(request);
+					}
+					assertEquals(queued, queue.update(request));
+					break;
+				default :
+					assertEquals(expected.add(request), queue.add(request));
+					break;
+			}
+			assertEquals(expected.size(), queue.size());
+			assertSame(expected.isEmpty() ? null : expected.first(), queue.peek());
+		}
+		while ( !expected.isEmpty() ){
+			assertSame(expected.pollFirst(), queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+	}
+}
@@ -0,0 +1,94 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoadSheddingPolicyTest {
+
+	private static final String HOST = "http://a.example.com";
+	private static final String OTHER_HOST = "http://b.example.com";
+	
+	private TestScheduler scheduler;
+	private TestRequest oldest;
+	private TestRequest lowest;
+	private TestRequest expired1;
+	private TestRequest expired2;
+	private TestRequest newest;
+	
+	@Before
+	public void setUp(){
+		scheduler = new TestScheduler(null, 1, 0);
+		scheduler.submit(new TestRequest(0, HOST, RequestPriority.LOW, 0, 0));	//Started: never a victim
+		oldest = new TestRequest(1, HOST, RequestPriority.NORMAL, 10, 5000);
+		lowest = new TestRequest(2, OTHER_HOST, RequestPriority.LOW, 20, 5000);
+		expired1 = new TestRequest(3, HOST, RequestPriority.HIGH, 30, 900);
+		expired2 = new TestRequest(4, OTHER_HOST, RequestPriority.HIGH, 40, 1000);
+		newest = new TestRequest(5, HOST, RequestPriority.HIGH, 50, 5000);
+		for ( TestRequest request : new TestRequest[]{oldest, lowest, expired1, expired2, newest} ){
+			scheduler.submit(request);
+		}
+	}
+	
+	@Test
+	public void rejectNewest(){
+		ArrayList<TestRequest> victims = scheduler.selectVictims(LoadSheddingPolicy.REJECT_NEWEST, newest, 1000);
+		assertEquals(1, victims.size());
+		assertSame(newest, victims.get(0));
+	}
+	
+	@Test
+	public void dropOldest(){
+		ArrayList<TestRequest> victims = scheduler.selectVictims(LoadSheddingPolicy.DROP_OLDEST, newest, 1000);
+		assertEquals(1, victims.size());
+		assertSame(oldest, victims.get(0));
+	}
+	
+	@Test
+	public void dropLowestPriority(){
+		ArrayList<TestRequest> victims = scheduler.selectVictims(LoadSheddingPolicy.DROP_LOWEST_PRIORITY, newest, 1000);
+		assertEquals(1, victims.size());
+		assertSame(lowest, victims.get(0));
+	}
+	
+	@Test
+	public void dropExpired(){
+		ArrayList<TestRequest> victims = scheduler.selectVictims(LoadSheddingPolicy.DROP_EXPIRED, newest, 1000);
+		assertEquals(2, victims.size());
+		assertTrue(victims.contains(expired1));
+		assertTrue(victims.contains(expired2));
+	}
+	
+	@Test
+	public void dropExpiredFallsBackToTheNewest(){
+		ArrayList<TestRequest> victims = scheduler.selectVictims(LoadSheddingPolicy.DROP_EXPIRED, newest, 500);
+		assertEquals(1, victims.size());
+		assertSame(newest, victims.get(0));
+	}
+	
+	@Test
+	public void dropExpiredSparesRequestsWithoutTimeout(){
+		TestScheduler scheduler = new TestScheduler(null, 1, 0);
+		scheduler.submit(TestRequest.withTimeout(0, HOST, RequestPriority.NORMAL, 0, 0));	//Started
+		TestRequest never = TestRequest.withTimeout(1, HOST, RequestPriority.NORMAL, 10, 0);
+		TestRequest expired = TestRequest.withTimeout(2, HOST, RequestPriority.NORMAL, 20, 1);
+		TestRequest newest = TestRequest.withTimeout(3, HOST, RequestPriority.NORMAL, 30, 0);
+		scheduler.submit(never);
+		scheduler.submit(expired);
+		scheduler.submit(newest);
+		ArrayList<TestRequest> victims = scheduler.selectVictims(LoadSheddingPolicy.DROP_EXPIRED, newest, 5000);
+		assertEquals(1, victims.size());
+		assertSame(expired, victims.get(0));
+	}
+	
+	@Test
+	public void victimsAreNotRemoved(){
+		scheduler.selectVictims(LoadSheddingPolicy.DROP_OLDEST, newest, 1000);
+		assertEquals(5, scheduler.getWaitingRequestsCount());
+	}
+}
@@ -0,0 +1,176 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PersistentIndexTest {
+
+	private static final String PREFIX = "test ";
+	private static final double NOW = 1000000;
+	
+	private static PersistentIndex loadedIndex(String version, int maxBytes){
+		PersistentIndex index = new PersistentIndex(PREFIX, version, maxBytes);
+		index.load(null, NOW);
+		index.pollRemovedKeys();
+		return index;
+	}
+	
+	@Test
+	public void expiredResponsesAreRemoved(){
+		PersistentIndex index = loadedIndex("v1", 1000);
+		index.put("a", NOW + 10, 100);
+		assertEquals(PersistentIndex.Lookup.VALID, index.lookup("a", NOW + 9));
+		assertEquals(PersistentIndex.Lookup.EXPIRED, index.lookup("a", NOW + 10));
+		assertEquals(Arrays.asList("test v1 a"), index.pollRemovedKeys());
+		assertEquals(0, index.size());
+		assertEquals(0, index.getBytes());
+		assertEquals(PersistentIndex.Lookup.MISSING, index.lookup("a", NOW + 10));
+		assertEquals(0, index.getEvictions());
+	}
+	
+	@Test
+	public void expiredResponsesAreDroppedOnLoad(){
+		PersistentIndex previous = loadedIndex("v1", 1000);
+		previous.put("old", NOW + 10, 100);
+		previous.put("fresh", NOW + 1000, 100);
+		String stored = previous.save();
+		
+		PersistentIndex index = new PersistentIndex(PREFIX, "v1", 1000);
+		index.load(stored, NOW + 500);
+		assertEquals(Arrays.asList("test v1 old"), index.pollRemovedKeys());
+		assertTrue(index.isDirty());
+		assertEquals(1, index.size());
+		assertEquals(100, index.getBytes());
+		assertEquals(PersistentIndex.Lookup.VALID, index.lookup("fresh", NOW + 500));
+	}
+	
+	@Test
+	public void leastRecentlyUsedResponsesAreEvicted(){
+		PersistentIndex index = loadedIndex("v1", 300);
+		index.put("a", NOW + 1000, 100);
+		index.put("b", NOW + 1000, 100);
+		index.put("c", NOW + 1000, 100);
+		assertEquals(PersistentIndex.Lookup.VALID, index.lookup("a", NOW));
+		assertTrue(index.pollRemovedKeys().isEmpty());
+		
+		assertTrue(index.put("d", NOW + 1000, 100));
+		assertEquals(Arrays.asList("test v1 b"), index.pollRemovedKeys());
+		assertEquals(1, index.getEvictions());
+		assertEquals(300, index.getBytes());
+		
+		//Replacing a response doesn't delete its own stored value
+		assertTrue(index.put("a", NOW + 1000, 150));
+		assertEquals(Arrays.asList("test v1 c"), index.pollRemovedKeys());
+		assertEquals(250, index.getBytes());
+		
+		//A response larger than the whole budget doesn't evict anything, and its stale value is deleted
+		assertFalse(index.put("d", NOW + 1000, 301));
+		assertEquals(Arrays.asList("test v1 d"), index.pollRemovedKeys());
+		assertEquals(1, index.size());
+		assertEquals(2, index.getEvictions());
+		
+		index.put("e", NOW + 1000, 100);
+		index.setMaxBytes(100);
+		assertEquals(Arrays.asList("test v1 a"), index.pollRemovedKeys());
+		assertEquals(3, index.getEvictions());
+		index.resetEvictions();
+		assertEquals(0, index.getEvictions());
+	}
+	
+	@Test
+	public void versionBumpDropsOldResponses(){
+		PersistentIndex previous = loadedIndex("v1", 1000);
+		previous.put("a", NOW + 1000, 100);
+		previous.put("b", NOW + 1000, 100);
+		String stored = previous.save();
+		
+		PersistentIndex index = new PersistentIndex(PREFIX, "v2", 1000);
+		index.load(stored, NOW);
+		assertEquals(Arrays.asList("test v1 a", "test v1 b"), index.pollRemovedKeys());
+		assertEquals(0, index.size());
+		assertEquals(0, index.getBytes());
+		assertTrue(index.isDirty());
+		assertEquals(PersistentIndex.Lookup.MISSING, index.lookup("a", NOW));
+		assertEquals("v2", index.save());
+		assertEquals("test v2 a", index.getStorageKey("a"));
+	}
+	
+	@Test
+	public void saveAndLoadRoundTrip(){
+		PersistentIndex previous = loadedIndex("v1", 1000);
+		assertFalse(previous.isDirty());
+		previous.put("a", NOW + 1000, 100);
+		previous.put("b\twith tab", NOW + 2000, 200);
+		assertTrue(previous.isDirty());
+		String stored = previous.save();
+		assertFalse(previous.isDirty());
+		
+		PersistentIndex index = new PersistentIndex(PREFIX, "v1", 1000);
+		index.load(stored, NOW);
+		assertTrue(index.pollRemovedKeys().isEmpty());
+		assertFalse(index.isDirty());
+		assertEquals(2, index.size());
+		assertEquals(300, index.getBytes());
+		assertEquals(stored, index.save());
+		
+		//Lookups change the LRU order, but the index is saved only after it changes
+		index.lookup("a", NOW);
+		assertFalse(index.isDirty());
+	}
+	
+	@Test
+	public void malformedEntriesAreDropped(){
+		PersistentIndex index = new PersistentIndex(PREFIX, "v1", 1000);
+		index.load("v1\nx\t100\ta\n" + (long) (NOW + 1000) + "\t100\tb\ngarbage", NOW);
+		assertEquals(Arrays.asList("test v1 a"), index.pollRemovedKeys());
+		assertEquals(1, index.size());
+		assertEquals(PersistentIndex.Lookup.VALID, index.lookup("b", NOW));
+	}
+	
+	@Test
+	public void loadRacingLookupsAndPuts(){
+		PersistentIndex previous = loadedIndex("v1", 300);
+		previous.put("a", NOW + 1000, 100);
+		previous.put("b", NOW + 1000, 100);
+		previous.put("c", NOW + 1000, 100);
+		String stored = previous.save();
+		
+		PersistentIndex index = new PersistentIndex(PREFIX, "v1", 300);
+		assertFalse(index.isLoaded());
+		//Until the stored index arrives, the storage itself has to be looked up
+		assertEquals(PersistentIndex.Lookup.UNKNOWN, index.lookup("a", NOW));
+		assertTrue(index.put("b", NOW + 5000, 150));
+		assertEquals(PersistentIndex.Lookup.VALID, index.lookup("b", NOW));
+		
+		index.load(stored, NOW);
+		assertTrue(index.isLoaded());
+		//The fresh response wins over the stored one, and the stored ones are older, so they are evicted first
+		List<String> removed = index.pollRemovedKeys();
+		assertEquals(Arrays.asList("test v1 a"), removed);
+		assertEquals(1, index.getEvictions());
+		assertEquals(2, index.size());
+		assertEquals(250, index.getBytes());
+		assertTrue(index.isDirty());
+		assertEquals(PersistentIndex.Lookup.VALID, index.lookup("b", NOW + 4999));
+		assertEquals(PersistentIndex.Lookup.VALID, index.lookup("c", NOW));
+		assertEquals(PersistentIndex.Lookup.MISSING, index.lookup("a", NOW));
+	}
+	
+	@Test
+	public void removeBeforeLoadDeletesTheStoredResponse(){
+		PersistentIndex index = new PersistentIndex(PREFIX, "v1", 1000);
+		assertFalse(index.remove("a"));
+		assertEquals(Arrays.asList("test v1 a"), index.pollRemovedKeys());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void versionCantContainLineBreaks(){
+		new PersistentIndex(PREFIX, "v\n1", 1000);
+	}
+}
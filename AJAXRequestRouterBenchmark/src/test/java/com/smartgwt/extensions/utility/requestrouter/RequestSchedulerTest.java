@@ -0,0 +1,131 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class RequestSchedulerTest {
+
+	private static final String HOST = "http://a.example.com";
+	private static final String OTHER_HOST = "http://b.example.com";
+	
+	@Test
+	public void requestsWaitOnceTheSlotsAreTaken(){
+		TestScheduler scheduler = new TestScheduler(null, 2, 1);
+		TestRequest r1 = new TestRequest(1, HOST, RequestPriority.NORMAL);
+		TestRequest r2 = new TestRequest(2, HOST, RequestPriority.NORMAL);
+		TestRequest r3 = new TestRequest(3, HOST, RequestPriority.NORMAL);
+		assertTrue(scheduler.submit(r1));
+		assertTrue(scheduler.submit(r2));
+		assertFalse(scheduler.submit(r3));
+		assertEquals(2, scheduler.getStartedRequestsCount());
+		assertEquals(1, scheduler.getWaitingRequestsCount());
+		assertTrue(scheduler.isWaiting(r3));
+		
+		assertFalse(scheduler.release(r3));	//It isn't holding a slot
+		assertTrue(scheduler.release(r1));
+		assertFalse(scheduler.release(r1));
+		assertEquals(1, scheduler.getStartedRequestsCount());
+		assertTrue(scheduler.isWaiting(r3));	//release doesn't dispatch
+		scheduler.dispatch();
+		assertTrue(scheduler.isStarted(r3));
+		assertEquals(2, scheduler.getStartedRequestsCount());
+		assertEquals(0, scheduler.getWaitingRequestsCount());
+	}
+	
+	@Test
+	public void urgentRequestsUseTheirOwnSlots(){
+		TestScheduler scheduler = new TestScheduler(null, 1, 1);
+		TestRequest normal = new TestRequest(1, HOST, RequestPriority.NORMAL);
+		TestRequest urgent1 = new TestRequest(2, HOST, RequestPriority.URGENT);
+		TestRequest urgent2 = new TestRequest(3, HOST, RequestPriority.URGENT);
+		TestRequest waiting = new TestRequest(4, HOST, RequestPriority.NORMAL);
+		assertTrue(scheduler.submit(normal));
+		assertFalse(scheduler.submit(waiting));
+		assertTrue(scheduler.submit(urgent1));	//The standard slot is taken, but an urgent one is free
+		assertFalse(scheduler.submit(urgent2));
+		assertEquals(1, scheduler.getStartedRequestsCount());
+		assertEquals(1, scheduler.getUrgentRequestsCount());
+		
+		//Urgent slots are never taken by dispatch: the freed standard slot goes to the first waiting request
+		assertTrue(scheduler.release(urgent1));
+		assertEquals(0, scheduler.getUrgentRequestsCount());
+		scheduler.dispatch();
+		assertTrue(scheduler.isWaiting(urgent2));
+		
+		assertTrue(scheduler.release(normal));
+		scheduler.dispatch();
+		assertTrue(scheduler.isStarted(urgent2));	//URGENT comes first
+		assertTrue(scheduler.isWaiting(waiting));
+		assertEquals(1, scheduler.getStartedRequestsCount());
+		assertEquals(0, scheduler.getUrgentRequestsCount());
+	}
+	
+	@Test
+	public void hostLimitsAreEnforced(){
+		TestScheduler scheduler = new TestScheduler(null, 4, 0);
+		scheduler.getPool(HOST).setMaxContemporaryRequests((short) 1);
+		TestRequest a1 = new TestRequest(1, HOST, RequestPriority.HIGH);
+		TestRequest a2 = new TestRequest(2, HOST, RequestPriority.HIGH);
+		TestRequest b1 = new TestRequest(3, OTHER_HOST, RequestPriority.LOW);
+		assertTrue(scheduler.submit(a1));
+		assertFalse(scheduler.submit(a2));
+		assertTrue(scheduler.submit(b1));	//Another host isn't affected
+		assertEquals(1, scheduler.getPool(HOST).getStartedRequestsCount());
+		assertEquals(1, scheduler.getPool(HOST).getWaitingRequestsCount());
+		
+		scheduler.release(a1);
+		scheduler.dispatch();
+		assertTrue(scheduler.isStarted(a2));
+	}
+	
+	@Test
+	public void removeAndReprioritize(){
+		TestScheduler scheduler = new TestScheduler(null, 1, 1);
+		TestRequest running = new TestRequest(1, HOST, RequestPriority.NORMAL);
+		TestRequest low = new TestRequest(2, HOST, RequestPriority.LOW);
+		TestRequest normal = new TestRequest(3, HOST, RequestPriority.NORMAL);
+		scheduler.submit(running);
+		scheduler.submit(low);
+		scheduler.submit(normal);
+		
+		low.priority = RequestPriority.HIGH;
+		assertEquals(RequestStatus.QUEUED, scheduler.reprioritized(low));
+		assertEquals(RequestStatus.LOST, scheduler.reprioritized(running));
+		
+		normal.priority = RequestPriority.URGENT;
+		assertEquals(RequestStatus.STARTED, scheduler.reprioritized(normal));	//The urgent slot was free
+		assertEquals(1, scheduler.getUrgentRequestsCount());
+		
+		assertFalse(scheduler.remove(running));	//It's holding a slot
+		assertTrue(scheduler.remove(low));
+		assertFalse(scheduler.remove(low));
+		assertEquals(0, scheduler.getWaitingRequestsCount());
+	}
+	
+	@Test
+	public void dispatchFollowsThePolicyAcrossHosts(){
+		TestScheduler scheduler = new TestScheduler(null, 1, 0);
+		TestRequest running = new TestRequest(1, HOST, RequestPriority.NORMAL);
+		TestRequest aLow = new TestRequest(2, HOST, RequestPriority.LOW);
+		TestRequest bHigh = new TestRequest(3, OTHER_HOST, RequestPriority.HIGH);
+		TestRequest aNormal = new TestRequest(4, HOST, RequestPriority.NORMAL);
+		scheduler.submit(running);
+		scheduler.submit(aLow);
+		scheduler.submit(bHigh);
+		scheduler.submit(aNormal);
+		ArrayList<TestRequest> order = new ArrayList<TestRequest>();
+		for ( int i = 0; i < 3; i++ ){
+			scheduler.completeOldest();
+			order.add(scheduler.started.get(scheduler.started.size() - 1));
+		}
+		assertSame(bHigh, order.get(0));
+		assertSame(aNormal, order.get(1));
+		assertSame(aLow, order.get(2));
+	}
+}
@@ -0,0 +1,128 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SchedulingPolicyTest {
+
+	private static final String HOST = "http://a.example.com";
+	
+	/**
+	 * Submits the requests to a scheduler with a single (busy) slot, then starts them one at a time
+	 * @return The order in which they've been started
+	 */
+	private static TestRequest[] startOrder(SchedulingPolicy policy, TestRequest... requests){
+		TestScheduler scheduler = new TestScheduler(policy, 1, 0);
+		scheduler.submit(new TestRequest(-1, HOST, RequestPriority.NORMAL));
+		for ( TestRequest request : requests ){
+			scheduler.submit(request);
+		}
+		TestRequest[] order = new TestRequest[requests.length];
+		for ( int i = 0; i < requests.length; i++ ){
+			scheduler.completeOldest();
+			order[i] = scheduler.started.get(i + 1);
+		}
+		return order;
+	}
+	
+	@Test
+	public void strictPriorityByDefault(){
+		TestRequest low = new TestRequest(1, HOST, RequestPriority.LOW, 0, 100);
+		TestRequest high = new TestRequest(2, HOST, RequestPriority.HIGH, 250, 500);
+		TestRequest[] order = startOrder(new PriorityAging(), low, high);
+		assertSame(high, order[0]);
+		assertSame(low, order[1]);
+	}
+	
+	@Test
+	public void agingLetsOldRequestsOvertakeHigherPriorityOnes(){
+		PriorityAging aging = new PriorityAging();
+		aging.setAgingInterval(100);
+		//Effective keys: enqueuing time + priority level * agingInterval
+		TestRequest low = new TestRequest(1, HOST, RequestPriority.LOW, 0, 10000);
+		TestRequest high = new TestRequest(2, HOST, RequestPriority.HIGH, 250, 10000);
+		TestRequest urgent = new TestRequest(3, HOST, RequestPriority.URGENT, 1000, 10000);
+		TestRequest normal = new TestRequest(4, HOST, RequestPriority.NORMAL, 50, 10000);
+		TestRequest[] order = startOrder(aging, low, high, urgent, normal);
+		assertSame(urgent, order[0]);	//Above the cap: never overtaken
+		assertSame(normal, order[1]);	//50 + 2*100 = 250
+		assertSame(low, order[2]);		//0 + 3*100 = 300
+		assertSame(high, order[3]);		//250 + 1*100 = 350
+	}
+	
+	@Test
+	public void earliestDeadlineFirstIgnoresPriority(){
+		TestRequest high = new TestRequest(1, HOST, RequestPriority.HIGH, 0, 5000);
+		TestRequest low = new TestRequest(2, HOST, RequestPriority.LOW, 10, 1000);
+		TestRequest normal = new TestRequest(3, HOST, RequestPriority.NORMAL, 20, 1000);
+		TestRequest[] order = startOrder(new EarliestDeadlineFirst(), high, low, normal);
+		assertSame(normal, order[0]);	//Same deadline as low: priority breaks the tie
+		assertSame(low, order[1]);
+		assertSame(high, order[2]);
+	}
+	
+	@Test
+	public void earliestDeadlineFirstPutsRequestsWithoutTimeoutLast(){
+		TestRequest never = TestRequest.withTimeout(1, HOST, RequestPriority.HIGH, 0, 0);
+		TestRequest late = TestRequest.withTimeout(2, HOST, RequestPriority.LOW, 10, 60);
+		TestRequest soon = TestRequest.withTimeout(3, HOST, RequestPriority.LOW, 20, 5);
+		TestRequest[] order = startOrder(new EarliestDeadlineFirst(), never, late, soon);
+		assertSame(soon, order[0]);
+		assertSame(late, order[1]);
+		assertSame(never, order[2]);	//Never due, despite having been submitted first
+	}
+	
+	@Test
+	public void weightedRoundRobinSharesSlotsByWeight(){
+		TestScheduler scheduler = new TestScheduler(new WeightedRoundRobin(), 1, 0);
+		scheduler.submit(new TestRequest(0, HOST, RequestPriority.NORMAL));
+		int id = 1;
+		for ( int i = 0; i < 100; i++ ){
+			scheduler.submit(new TestRequest(id++, HOST, RequestPriority.HIGH));
+			scheduler.submit(new TestRequest(id++, HOST, RequestPriority.NORMAL));
+			scheduler.submit(new TestRequest(id++, HOST, RequestPriority.LOW));
+		}
+		int[] counts = new int[RequestPriority.values().length];
+		for ( int i = 0; i < 70; i++ ){
+			scheduler.completeOldest();
+			counts[scheduler.started.get(scheduler.started.size() - 1).getPriority().ordinal()]++;
+		}
+		//Weights 4:2:1 over 70 slots
+		assertTrue(Math.abs(counts[RequestPriority.HIGH.ordinal()] - 40) <= 1);
+		assertTrue(Math.abs(counts[RequestPriority.NORMAL.ordinal()] - 20) <= 1);
+		assertTrue(Math.abs(counts[RequestPriority.LOW.ordinal()] - 10) <= 1);
+	}
+	
+	@Test
+	public void weightedRoundRobinAdvancesForReprioritizedUrgentRequests(){
+		TestScheduler scheduler = new TestScheduler(new WeightedRoundRobin(), 1, 1);
+		scheduler.submit(new TestRequest(0, HOST, RequestPriority.NORMAL));
+		TestRequest promoted = new TestRequest(1, HOST, RequestPriority.LOW);	//Tagged 1.0
+		TestRequest normal = new TestRequest(2, HOST, RequestPriority.NORMAL);	//Tagged 0.5
+		scheduler.submit(promoted);
+		scheduler.submit(normal);
+		promoted.priority = RequestPriority.URGENT;
+		assertEquals(RequestStatus.STARTED, scheduler.reprioritized(promoted));
+		//Its tag has become the virtual time, so a new HIGH request is tagged 1.0 + 0.25, after the NORMAL one
+		TestRequest high = new TestRequest(3, HOST, RequestPriority.HIGH);
+		scheduler.submit(high);
+		scheduler.completeOldest();
+		assertSame(normal, scheduler.started.get(scheduler.started.size() - 1));
+	}
+	
+	@Test
+	public void replacingThePolicyReordersWaitingRequests(){
+		TestScheduler scheduler = new TestScheduler(null, 1, 0);
+		scheduler.submit(new TestRequest(0, HOST, RequestPriority.NORMAL));
+		TestRequest high = new TestRequest(1, HOST, RequestPriority.HIGH, 0, 5000);
+		TestRequest low = new TestRequest(2, HOST, RequestPriority.LOW, 0, 100);
+		scheduler.submit(high);
+		scheduler.submit(low);
+		scheduler.setPolicy(new EarliestDeadlineFirst());
+		scheduler.completeOldest();
+		assertSame(low, scheduler.started.get(1));
+	}
+}
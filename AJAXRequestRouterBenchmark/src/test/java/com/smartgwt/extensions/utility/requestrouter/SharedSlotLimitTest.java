@@ -0,0 +1,69 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SharedSlotLimitTest {
+
+	private static final String HOST = "http://a.example.com";
+	
+	private static int countStarted(TestScheduler scheduler){
+		return scheduler.getStartedRequestsCount() + scheduler.getUrgentRequestsCount();
+	}
+	
+	@Test
+	public void capsRequestsAcrossSchedulers(){
+		SharedSlotLimit limit = new SharedSlotLimit(4);
+		TestScheduler a = new TestScheduler(null, 6, 0);
+		TestScheduler b = new TestScheduler(null, 6, 0);
+		a.setSharedLimit(limit);
+		b.setSharedLimit(limit);
+		for ( int i = 0; i < 10; i++ ){
+			a.submit(new TestRequest(i, HOST, RequestPriority.NORMAL));
+		}
+		for ( int i = 10; i < 20; i++ ){
+			assertFalse(b.submit(new TestRequest(i, HOST, RequestPriority.NORMAL)));
+		}
+		assertEquals(4, countStarted(a));
+		assertEquals(0, countStarted(b));
+		assertEquals(4, limit.getInUse());
+		
+		//Freed slots are shared in turns, instead of going back to the scheduler which has released them
+		a.completeOldest();
+		a.completeOldest();
+		assertEquals(4, limit.getInUse());
+		assertEquals(3, countStarted(a));
+		assertEquals(1, countStarted(b));
+		
+		for ( int i = 0; i < 50; i++ ){
+			(i % 3 == 0 ? b : a).completeOldest();
+			assertTrue(limit.getInUse() <= 4);
+			assertEquals(limit.getInUse(), countStarted(a) + countStarted(b));
+		}
+	}
+	
+	@Test
+	public void joiningSchedulersBringTheirRequestsInFlight(){
+		SharedSlotLimit limit = new SharedSlotLimit(2);
+		TestScheduler a = new TestScheduler(null, 6, 0);
+		a.submit(new TestRequest(1, HOST, RequestPriority.NORMAL));
+		a.submit(new TestRequest(2, HOST, RequestPriority.NORMAL));
+		a.submit(new TestRequest(3, HOST, RequestPriority.NORMAL));
+		a.setSharedLimit(limit);
+		assertEquals(3, limit.getInUse());
+		
+		TestScheduler b = new TestScheduler(null, 6, 0);
+		b.setSharedLimit(limit);
+		assertFalse(b.submit(new TestRequest(4, HOST, RequestPriority.NORMAL)));
+		a.completeOldest();
+		assertEquals(0, countStarted(b));	//Still over the cap
+		a.completeOldest();
+		assertEquals(1, countStarted(b));
+		
+		a.setSharedLimit(null);
+		assertEquals(1, limit.getInUse());
+	}
+}
@@ -0,0 +1,61 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+/**
+ * A request as seen by the scheduling core, with no network behind it
+ */
+class TestRequest implements Schedulable {
+	private final int id;
+	private final String host;
+	RequestPriority priority;
+	private final double enqueuedAt;
+	private final double dueAt;
+	
+	TestRequest(int _id, String _host, RequestPriority _priority){
+		this(_id, _host, _priority, _id, _id + 10000);
+	}
+	
+	TestRequest(int _id, String _host, RequestPriority _priority, double _enqueuedAt, double _dueAt){
+		id = _id;
+		host = _host;
+		priority = _priority;
+		enqueuedAt = _enqueuedAt;
+		dueAt = _dueAt;
+	}
+
+	/**
+	 * Creates a request which is due according to its timeout, as AJAXRequest is
+	 */
+	static TestRequest withTimeout(int _id, String _host, RequestPriority _priority, double _enqueuedAt, int _timeout){
+		return new TestRequest(_id, _host, _priority, _enqueuedAt, SchedulingPolicy.dueAt(_enqueuedAt, _timeout));
+	}
+
+	@Override
+	public int getID() {
+		return id;
+	}
+
+	@Override
+	public RequestPriority getPriority() {
+		return priority;
+	}
+
+	@Override
+	public String getHost() {
+		return host;
+	}
+
+	@Override
+	public double getEnqueuedAt() {
+		return enqueuedAt;
+	}
+
+	@Override
+	public double getDueAt() {
+		return dueAt;
+	}
+	
+	@Override
+	public String toString() {
+		return "#" + id + " " + priority;
+	}
+}
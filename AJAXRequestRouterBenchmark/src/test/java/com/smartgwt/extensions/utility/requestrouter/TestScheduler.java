@@ -0,0 +1,45 @@
+package com.smartgwt.extensions.utility.requestrouter;
+
+import java.util.ArrayList;
+
+/**
+ * A RequestScheduler whose dispatcher just records the requests it's given, in order
+ */
+class TestScheduler extends RequestScheduler<TestRequest, SlotPool<TestRequest>> {
+	
+	final ArrayList<TestRequest> started;
+	
+	TestScheduler(SchedulingPolicy policy, int maxContemporaryRequests, int maxContemporaryUrgentRequests){
+		this(policy, maxContemporaryRequests, maxContemporaryUrgentRequests, new ArrayList<TestRequest>());
+	}
+	
+	private TestScheduler(SchedulingPolicy policy, int maxContemporaryRequests, int maxContemporaryUrgentRequests,
+			final ArrayList<TestRequest> _started){
+		super(new Dispatcher<TestRequest>() {
+			@Override
+			public void start(TestRequest request) {
+				_started.add(request);
+			}
+		}, policy, (short) maxContemporaryRequests, (short) maxContemporaryUrgentRequests);
+		started = _started;
+	}
+
+	@Override
+	protected SlotPool<TestRequest> newPool(String host) {
+		return new SlotPool<TestRequest>(host, getOrdering());
+	}
+	
+	/**
+	 * Completes the oldest request started and not completed yet, and lets the scheduler start the next ones
+	 */
+	TestRequest completeOldest(){
+		for ( TestRequest request : started ){
+			if ( isStarted(request) ){
+				release(request);
+				dispatch();
+				return request;
+			}
+		}
+		return null;
+	}
+}